@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the cached readers and writers of JsonConverter with the former converter that
+ * built an ObjectMapper per call. Run with "mvn -P benchmark test-compile exec:exec".
+ * No JMH results have been recorded for this benchmark yet. The speed-up of the cached readers and
+ * writers was only measured with a plain timing loop, which is not as reliable as a JMH run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonConverterBenchmark {
+
+	private String statementsJson;
+	private byte[] statementsBytes;
+	private InteractiveJobParameters params;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder("{\"total_statements\":50,\"statements\":[");
+		for(int i = 0; i < 50; i++) {
+			if(i > 0) sb.append(',');
+			sb.append("{\"id\":").append(i).append(",\"code\":\"val x = ").append(i).append("\",\"state\":\"available\",\"progress\":1.0,")
+				.append("\"output\":{\"status\":\"ok\",\"execution_count\":").append(i)
+				.append(",\"data\":{\"text/plain\":\"x: Int = ").append(i).append("\"}}}");
+		}
+		statementsJson = sb.append("]}").toString();
+		statementsBytes = statementsJson.getBytes(StandardCharsets.UTF_8);
+		params = new InteractiveJobParameters(SessionKind.SPARK);
+	}
+
+	/** The converter before the readers were cached: a new mapper per call, reading from a string. */
+	@Benchmark
+	public StatementResults readPerCallMapper() throws IOException {
+		ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		return mapper.readValue(statementsJson, StatementResults.class);
+	}
+
+	@Benchmark
+	public StatementResults readCachedString() throws IOException {
+		return JsonConverter.toObject(StatementResults.class, statementsJson);
+	}
+
+	@Benchmark
+	public StatementResults readCachedStream() throws IOException {
+		return JsonConverter.toObject(StatementResults.class, new ByteArrayInputStream(statementsBytes));
+	}
+
+	/** The converter before the writers were cached: a new mapper per call with pretty printing. */
+	@Benchmark
+	public String writePerCallMapper() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
+		return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(params);
+	}
+
+	@Benchmark
+	public byte[] writeCachedBytes() throws IOException {
+		return JsonConverter.toJsonBytes(params);
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Common part of LivyInteractiveClient and LivyBatchClient.
+ */
+abstract class AbstractLivyClient implements Closeable {
+
+	/** Number of sessions requested per page when iterating over sessions. */
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	protected URL baseUri = null;
+	protected CredentialsProvider credentials = null;
+	protected LivyTransport transport = null;
+	private boolean ownTransport = false;
+	private LivyPoller poller = null;
+	private boolean ownPoller = false;
+
+	AbstractLivyClient(String uri, CredentialsProvider creds, LivyTransport trans) throws MalformedURLException {
+		baseUri = new URL(uri);
+		credentials = creds;
+		if(trans == null) {
+			transport = new PooledHttpTransport();
+			ownTransport = true;
+		} else {
+			transport = trans;
+		}
+	}
+
+	/**
+	 * Gets the transport used by this client.
+	 * @return transport
+	 */
+	public LivyTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the poller that monitors sessions and statements. A poller can be shared by several clients.
+	 * When it is not set, the client creates its own poller on the first use.
+	 * @param p Poller
+	 */
+	public synchronized void setPoller(LivyPoller p) {
+		if(poller != null && ownPoller) poller.close();
+		poller = p;
+		ownPoller = false;
+	}
+
+	/**
+	 * Gets the poller that monitors sessions and statements.
+	 * @return Poller
+	 */
+	public synchronized LivyPoller getPoller() {
+		if(poller == null) {
+			poller = new LivyPoller();
+			ownPoller = true;
+		}
+		return poller;
+	}
+
+	/**
+	 * Stops monitoring the session if the poller is in use.
+	 * @param key Key of the session given to the poller
+	 */
+	protected synchronized void cancelPolling(String key) {
+		if(poller != null) poller.cancel(key);
+	}
+
+	/**
+	 * Gets the credentials provider used by this client.
+	 * @return Credentials provider, or null if no credentials are sent
+	 */
+	public CredentialsProvider getCredentials() {
+		return credentials;
+	}
+
+	/**
+	 * Sends a request to the given path under the base uri.
+	 * The Authorization header is attached preemptively. When livy server returns 401 and
+	 * the credentials provider could obtain new credentials, the request is sent once more.
+	 * @param method HTTP method
+	 * @param path Path that starts with "/"
+	 * @param body Request body, or null
+	 * @return Response. The caller must close it.
+	 * @throws IOException
+	 */
+	protected LivyResponse send(String method, String path, byte[] body) throws IOException {
+		LivyRequest req = newRequest(method, path);
+		req.setBody(body);
+		return execute(req);
+	}
+
+	/**
+	 * Sends a request whose body is written directly to the connection.
+	 * A 401 response is returned as it is if the body cannot be written again.
+	 * @param method HTTP method
+	 * @param path Path that starts with "/"
+	 * @param body Request body
+	 * @return Response. The caller must close it.
+	 * @throws IOException
+	 */
+	protected LivyResponse sendStreaming(String method, String path, LivyRequestBody body) throws IOException {
+		LivyRequest req = newRequest(method, path);
+		req.setBody(body);
+		return execute(req);
+	}
+
+	private LivyRequest newRequest(String method, String path) throws MalformedURLException {
+		LivyRequest req = new LivyRequest(method, new URL(baseUri + path));
+		req.setHeader("Content-Type", "application/json");
+		req.setHeader("X-Requested-By", "admin"); // Required from HDI3.6 (Spark2.3)
+		return req;
+	}
+
+	private LivyResponse execute(LivyRequest req) throws IOException {
+		if(credentials == null) return transport.execute(req);
+
+		authorize(req);
+		LivyResponse resp = transport.execute(req);
+		if(resp.getStatusCode() != 401) return resp;
+		LivyRequestBody body = req.getStreamingBody();
+		if((body != null && body.isRepeatable() == false) || credentials.refresh() == false) return resp;
+		resp.close();
+		authorize(req);
+		return transport.execute(req);
+	}
+
+	/**
+	 * Sets the Authorization header, or leaves it out when the provider has no credentials.
+	 */
+	private void authorize(LivyRequest req) throws IOException {
+		String authorization = credentials.getAuthorization();
+		if(authorization == null) {
+			req.getHeaders().remove("Authorization");
+		} else {
+			req.setHeader("Authorization", authorization);
+		}
+	}
+
+	/**
+	 * Throws IOException if the status code is not successful.
+	 * @param resp Response
+	 * @throws IOException
+	 */
+	protected static void checkResponse(LivyResponse resp) throws IOException {
+		int code = resp.getStatusCode();
+		if(code < 200 || code >= 300) {
+			throw new IOException("Invalid HTTP response code is returned. " + code);
+		}
+	}
+
+	/**
+	 * Binds the response body to a Java object.
+	 * @param resp Response
+	 * @param cls Java class
+	 * @return Java object
+	 * @throws IOException
+	 */
+	protected static <T> T readObject(LivyResponse resp, Class<T> cls) throws IOException {
+		return JsonConverter.toObject(cls, resp.getBody());
+	}
+
+	/**
+	 * Fetches a page of the log of a session.
+	 * @param path Path of the session such as "/batches/1"
+	 * @param from Index of the first line
+	 * @param size Maximum number of lines
+	 * @return Log page
+	 * @throws IOException
+	 */
+	protected LogPage fetchLog(String path, int from, int size) throws IOException {
+		try (LivyResponse resp = send("GET", path + "/log?from=" + from + "&size=" + size, null)) {
+			checkResponse(resp);
+			return readObject(resp, LogPage.class);
+		}
+	}
+
+	/**
+	 * Reads a page of GET /sessions or GET /batches with a streaming parser.
+	 * Only the fields of SessionInfo except appInfo and log are read, and the others are skipped
+	 * without being built, so a large log of each session does not cost memory.
+	 * @param path "/sessions" or "/batches"
+	 * @param from Index of the first session
+	 * @param size Maximum number of sessions
+	 * @param consumer Receives each session
+	 * @return Total number of sessions on livy server
+	 * @throws IOException
+	 */
+	int listSessions(String path, int from, int size, Consumer<SessionInfo> consumer) throws IOException {
+		int total = 0;
+		try (LivyResponse resp = send("GET", path + "?from=" + from + "&size=" + size, null);
+				JsonParser p = JsonConverter.createParser(resp.getBody())) {
+			checkResponse(resp);
+			if(p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Invalid response of " + path + ".");
+			while(p.nextToken() == JsonToken.FIELD_NAME) {
+				String field = p.getCurrentName();
+				JsonToken t = p.nextToken();
+				if(field.equals("total")) {
+					total = p.getIntValue();
+				} else if(field.equals("sessions") && t == JsonToken.START_ARRAY) {
+					while(p.nextToken() == JsonToken.START_OBJECT) {
+						consumer.accept(readSessionInfo(p));
+					}
+				} else {
+					p.skipChildren();
+				}
+			}
+		}
+		return total;
+	}
+
+	private static SessionInfo readSessionInfo(JsonParser p) throws IOException {
+		SessionInfo info = new SessionInfo();
+		while(p.nextToken() == JsonToken.FIELD_NAME) {
+			String field = p.getCurrentName();
+			JsonToken t = p.nextToken();
+			if(field.equals("id")) {
+				info.id = p.getIntValue();
+			} else if(t != JsonToken.VALUE_STRING) {
+				p.skipChildren();
+			} else if(field.equals("state")) {
+				info.state = p.getText();
+			} else if(field.equals("appId")) {
+				info.appId = p.getText();
+			} else if(field.equals("owner")) {
+				info.owner = p.getText();
+			} else if(field.equals("proxyUser")) {
+				info.proxyUser = p.getText();
+			} else if(field.equals("kind")) {
+				info.kind = p.getText();
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * Creates a lazy iterator over GET /sessions or GET /batches. A page is requested only when
+	 * the sessions of the previous page are consumed.
+	 * @param path "/sessions" or "/batches"
+	 * @param filter Filter applied while each page is parsed, or null for all sessions
+	 * @param pageSize Number of sessions requested per page
+	 * @param factory Creates a session object from the parsed info
+	 * @return Iterator of the sessions
+	 */
+	<T extends Session> Iterator<T> iterate(String path, SessionFilter filter, int pageSize, Function<SessionInfo, T> factory) {
+		if(pageSize < 1) throw new IllegalArgumentException("Page size must be positive.");
+		return new Iterator<T>() {
+			private final ArrayDeque<T> page = new ArrayDeque<T>();
+			private int from = 0;
+			private int total = Integer.MAX_VALUE;
+
+			@Override
+			public boolean hasNext() {
+				while(page.isEmpty() && from < total) {
+					try {
+						total = listSessions(path, from, pageSize, info -> {
+							if(filter == null || filter.matches(info)) page.add(factory.apply(info));
+						});
+					} catch(IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					from += pageSize;
+				}
+				return page.isEmpty() == false;
+			}
+
+			@Override
+			public T next() {
+				if(hasNext() == false) throw new NoSuchElementException();
+				return page.poll();
+			}
+		};
+	}
+
+	/**
+	 * Wraps an iterator into a sequential stream.
+	 */
+	static <T> Stream<T> stream(Iterator<T> it) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Reads the whole response body as a string.
+	 * @param resp Response
+	 * @return Response body
+	 * @throws IOException
+	 */
+	protected static String readString(LivyResponse resp) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		BufferedReader br = new BufferedReader(new InputStreamReader(resp.getBody(), "UTF-8"));
+		String line = null;
+		while ((line = br.readLine()) != null) {
+			sb.append(line);
+			sb.append("\r\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Stops the poller and closes the transport if they were created by this client.
+	 * The sessions on livy server are not deleted.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this) {
+			if(poller != null && ownPoller) poller.close();
+			poller = null;
+		}
+		if(ownTransport) transport.close();
+	}
+}
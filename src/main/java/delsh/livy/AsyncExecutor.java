@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking requests of the async clients.
+ * Only the HTTP round trip occupies a thread; waiting for the remote state is done by LivyPoller.
+ */
+class AsyncExecutor {
+
+	static final int DEFAULT_THREADS = 4;
+
+	private static final AtomicInteger poolCount = new AtomicInteger();
+	private static ScheduledThreadPoolExecutor timer = null;
+
+	private final Executor executor;
+	private final ExecutorService own;
+	// Futures completed by the poller. They are failed on shutdown() so that no caller waits forever.
+	private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed = false;
+
+	AsyncExecutor(Executor exec) {
+		if(exec == null) {
+			final int pool = poolCount.incrementAndGet();
+			final AtomicInteger count = new AtomicInteger();
+			own = Executors.newFixedThreadPool(DEFAULT_THREADS, r -> {
+				Thread t = new Thread(r, "livy-async-" + pool + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			executor = own;
+		} else {
+			own = null;
+			executor = exec;
+		}
+	}
+
+	/**
+	 * Runs the task and completes the future with its result. A checked exception thrown by the task
+	 * completes the future exceptionally as it is.
+	 */
+	<T> CompletableFuture<T> call(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.call());
+				} catch(Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch(RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Registers a future that is completed by a listener, so that shutdown() can fail it.
+	 * @return The given future
+	 */
+	<T> CompletableFuture<T> track(CompletableFuture<T> future) {
+		pending.add(future);
+		future.whenComplete((r, e) -> pending.remove(future));
+		if(closed) future.completeExceptionally(new CancellationException("Client is closed."));
+		return future;
+	}
+
+	/**
+	 * Runs the task after the delay on a timer thread shared by all the async clients.
+	 * The task must be short since it holds the timer thread.
+	 */
+	static synchronized ScheduledFuture<?> schedule(Runnable task, long delay) {
+		if(timer == null) {
+			timer = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "livy-async-timer");
+				t.setDaemon(true);
+				return t;
+			});
+			timer.setRemoveOnCancelPolicy(true);
+		}
+		return timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	void shutdown() {
+		closed = true;
+		if(own != null) own.shutdown();
+		for(CompletableFuture<?> f : pending) {
+			f.completeExceptionally(new CancellationException("Client is closed."));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking facade of LivyBatchClient.
+ * Every method returns immediately with a CompletableFuture. The future of createJob completes
+ * when the batch reaches a final state, and the waiting is done by the poller of the client.
+ */
+public class AsyncLivyBatchClient implements Closeable {
+
+	private final LivyBatchClient client;
+	private final AsyncExecutor executor;
+	private final PollingPolicy defaultPolicy;
+
+	/**
+	 * Creates an async client with its own executor for the requests.
+	 * @param client Client to be wrapped
+	 */
+	public AsyncLivyBatchClient(LivyBatchClient client) {
+		this(client, null, null);
+	}
+
+	/**
+	 * Creates an async client.
+	 * @param client Client to be wrapped
+	 * @param executor Executor that runs the requests. The default executor is created if null.
+	 * @param policy Policy for monitoring the batch. The default policy is used if null.
+	 */
+	public AsyncLivyBatchClient(LivyBatchClient client, Executor executor, PollingPolicy policy) {
+		this.client = client;
+		this.executor = new AsyncExecutor(executor);
+		this.defaultPolicy = (policy != null) ? policy : new JitteredPollingPolicy(new ExponentialPollingPolicy(1000, 30000, 2), 0.1);
+	}
+
+	/**
+	 * Gets the wrapped client.
+	 * @return client
+	 */
+	public LivyBatchClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Creates a new batch job.
+	 * @param req BatchJobParameters object
+	 * @return Future completed with the session once the batch reaches SUCCESS, DEAD or ERROR.
+	 *  Check Session.getState() for the outcome.
+	 */
+	public CompletableFuture<BatchSession> createJob(BatchJobParameters req) {
+		return createJob(req, defaultPolicy);
+	}
+
+	/**
+	 * Creates a new batch job.
+	 * @param req BatchJobParameters object
+	 * @param policy Policy for monitoring the batch
+	 * @return Future completed with the session once the batch reaches SUCCESS, DEAD or ERROR.
+	 *  Check Session.getState() for the outcome. It completes exceptionally with IOException if the status
+	 *  can not be fetched, and with CancellationException if the batch is deleted or the client is closed.
+	 */
+	public CompletableFuture<BatchSession> createJob(BatchJobParameters req, PollingPolicy policy) {
+		CompletableFuture<BatchSession> done = executor.track(new CompletableFuture<BatchSession>());
+		executor.call(() -> client.createJob(req, policy, new SessionEventListener() {
+			@Override
+			public boolean updateStatus(Session event) {
+				if(LivyBatchClient.isFinished(event.getState())) {
+					done.complete((BatchSession)event);
+					return false;
+				}
+				return done.isDone() == false;
+			}
+
+			@Override
+			public void onError(Exception cause) {
+				done.completeExceptionally(cause);
+			}
+		})).whenComplete((s, e) -> {
+			if(e != null) done.completeExceptionally(e);
+		});
+		return done;
+	}
+
+	/**
+	 * Gets the state of the batch session.
+	 * @return Future of the session
+	 */
+	public CompletableFuture<BatchSession> getSession() {
+		return executor.call(() -> client.getSession());
+	}
+
+	/**
+	 * Obtains full logs of the batch.
+	 * @return Future of the log data
+	 */
+	public CompletableFuture<String> getFullLog() {
+		return executor.call(() -> client.getFullLog());
+	}
+
+	/**
+	 * Deletes the batch session.
+	 * @return Future completed when the session is deleted
+	 */
+	public CompletableFuture<Void> deleteSession() {
+		return executor.call(() -> {
+			client.deleteSession();
+			return null;
+		});
+	}
+
+	/**
+	 * Stops the executor created by this object. The futures still waiting for a batch complete
+	 * exceptionally with CancellationException. The wrapped client is not closed.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
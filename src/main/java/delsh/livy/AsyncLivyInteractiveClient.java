@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Non-blocking facade of LivyInteractiveClient.
+ * Every method returns immediately with a CompletableFuture. The futures of createSession and
+ * submitStatement complete when the session becomes idle or the statement completes, and the
+ * waiting is done by the poller of the client without holding a thread per call.
+ */
+public class AsyncLivyInteractiveClient implements Closeable {
+
+	private final LivyInteractiveClient client;
+	private final AsyncExecutor executor;
+	private final PollingPolicy defaultPolicy;
+
+	/**
+	 * Creates an async client with its own executor for the requests.
+	 * @param client Client to be wrapped
+	 */
+	public AsyncLivyInteractiveClient(LivyInteractiveClient client) {
+		this(client, null, null);
+	}
+
+	/**
+	 * Creates an async client.
+	 * @param client Client to be wrapped
+	 * @param executor Executor that runs the requests. The default executor is created if null.
+	 * @param policy Policy for monitoring sessions and statements. The default policy is used if null.
+	 */
+	public AsyncLivyInteractiveClient(LivyInteractiveClient client, Executor executor, PollingPolicy policy) {
+		this.client = client;
+		this.executor = new AsyncExecutor(executor);
+		this.defaultPolicy = (policy != null) ? policy : new JitteredPollingPolicy(new ExponentialPollingPolicy(50, 2000, 2), 0.1);
+	}
+
+	/**
+	 * Gets the wrapped client.
+	 * @return client
+	 */
+	public LivyInteractiveClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Creates a new interactive session.
+	 * @param req InteractiveJobParameters object
+	 * @return Future completed with the session once it becomes idle. It completes exceptionally
+	 *  with LivyException if the session becomes dead or error.
+	 */
+	public CompletableFuture<InteractiveSession> createSession(InteractiveJobParameters req) {
+		return createSession(req, defaultPolicy);
+	}
+
+	/**
+	 * Creates a new interactive session.
+	 * @param req InteractiveJobParameters object
+	 * @param policy Policy for monitoring the status
+	 * @return Future completed with the session once it becomes idle. It completes exceptionally
+	 *  with LivyException if the session becomes dead or error, with IOException if the status can not
+	 *  be fetched, and with CancellationException if the session is deleted or the client is closed.
+	 */
+	public CompletableFuture<InteractiveSession> createSession(InteractiveJobParameters req, PollingPolicy policy) {
+		CompletableFuture<InteractiveSession> ready = executor.track(new CompletableFuture<InteractiveSession>());
+		executor.call(() -> client.createSession(req, policy, new SessionEventListener() {
+			@Override
+			public boolean updateStatus(Session event) {
+				switch(event.getState()) {
+				case Session.IDLE:
+					ready.complete((InteractiveSession)event);
+					return false;
+				case Session.DEAD:
+				case Session.ERROR:
+					ready.completeExceptionally(new LivyException("Session " + event.getId() + " failed to start. state=" + event.getState()));
+					return false;
+				default:
+					return ready.isDone() == false;
+				}
+			}
+
+			@Override
+			public void onError(Exception cause) {
+				ready.completeExceptionally(cause);
+			}
+		})).whenComplete((s, e) -> {
+			if(e != null) ready.completeExceptionally(e);
+		});
+		return ready;
+	}
+
+	/**
+	 * Gets the interactive session object.
+	 * @return Future of the session
+	 */
+	public CompletableFuture<InteractiveSession> getSession() {
+		return executor.call(() -> client.getSession());
+	}
+
+	/**
+	 * Gets the latest status of the given session.
+	 * @param s Session
+	 * @return Future of the session
+	 */
+	public CompletableFuture<InteractiveSession> getSession(InteractiveSession s) {
+		return executor.call(() -> client.getSession(s));
+	}
+
+	/**
+	 * Submits a statement.
+	 * @param statement Statement code
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(String statement) {
+		return submitStatement(statement, defaultPolicy);
+	}
+
+	/**
+	 * Submits a statement.
+	 * @param statement Statement code
+	 * @param policy Policy for monitoring the statement
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(String statement, PollingPolicy policy) {
+		CompletableFuture<StatementResult> result = executor.track(new CompletableFuture<StatementResult>());
+		executor.call(() -> client.submitStatement(statement, policy, completing(result)))
+			.whenComplete((id, e) -> {
+				if(e != null) result.completeExceptionally(e);
+			});
+		return result;
+	}
+
+	/**
+	 * Submits a statement to the given session.
+	 * @param s Session
+	 * @param statement Statement code
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(InteractiveSession s, String statement) {
+		return submitStatement(s, statement, defaultPolicy);
+	}
+
+	/**
+	 * Submits a statement to the given session.
+	 * @param s Session
+	 * @param statement Statement code
+	 * @param policy Policy for monitoring the statement
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(InteractiveSession s, String statement, PollingPolicy policy) {
+		CompletableFuture<StatementResult> result = executor.track(new CompletableFuture<StatementResult>());
+		executor.call(() -> client.submitStatement(s, statement, policy, completing(result)))
+			.whenComplete((id, e) -> {
+				if(e != null) result.completeExceptionally(e);
+			});
+		return result;
+	}
+
+	/**
+	 * Submits a statement of the given kind to the given session, e.g. to a session of SessionKind.SHARED.
+	 * @param s Session
+	 * @param statement Statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(InteractiveSession s, String statement, SessionKind kind) {
+		return submitStatement(s, statement, kind, defaultPolicy);
+	}
+
+	/**
+	 * Submits a statement of the given kind to the given session.
+	 * @param s Session
+	 * @param statement Statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @param policy Policy for monitoring the statement
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(InteractiveSession s, String statement, SessionKind kind, PollingPolicy policy) {
+		CompletableFuture<StatementResult> result = executor.track(new CompletableFuture<StatementResult>());
+		executor.call(() -> client.submitStatement(s, statement, kind, policy, completing(result)))
+			.whenComplete((id, e) -> {
+				if(e != null) result.completeExceptionally(e);
+			});
+		return result;
+	}
+
+	/**
+	 * Submits a statement whose code is streamed from a string, a reader or a file.
+	 * @param s Session
+	 * @param body Statement body
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(InteractiveSession s, StatementBody body) {
+		return submitStatement(s, body, defaultPolicy);
+	}
+
+	/**
+	 * Submits a statement whose code is streamed from a string, a reader or a file.
+	 * @param s Session
+	 * @param body Statement body
+	 * @param policy Policy for monitoring the statement
+	 * @return Future completed with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitStatement(InteractiveSession s, StatementBody body, PollingPolicy policy) {
+		CompletableFuture<StatementResult> result = executor.track(new CompletableFuture<StatementResult>());
+		executor.call(() -> client.submitStatement(s, body, policy, completing(result)))
+			.whenComplete((id, e) -> {
+				if(e != null) result.completeExceptionally(e);
+			});
+		return result;
+	}
+
+	/**
+	 * Gets the result of statements in JSON format.
+	 * @return Future of the result
+	 */
+	public CompletableFuture<String> getStatementResult() {
+		return executor.call(() -> client.getStatementResult());
+	}
+
+	/**
+	 * Submits a deterministic, read-only statement through the statement cache of the client.
+	 * @param s Session
+	 * @param scope Scope of the cached result, or null
+	 * @param statement Statement code
+	 * @return Future completed with the cached result on a hit, or with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitCachedStatement(InteractiveSession s, String scope, String statement) {
+		return submitCachedStatement(s, scope, statement, null);
+	}
+
+	/**
+	 * Submits a deterministic, read-only statement of the given kind through the statement cache of the client.
+	 * @param s Session
+	 * @param scope Scope of the cached result, or null
+	 * @param statement Statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @return Future completed with the cached result on a hit, or with the result once the statement completes
+	 */
+	public CompletableFuture<StatementResult> submitCachedStatement(InteractiveSession s, String scope, String statement, SessionKind kind) {
+		CompletableFuture<StatementResult> result = executor.track(new CompletableFuture<StatementResult>());
+		executor.call(() -> client.submitCachedStatement(s, scope, statement, kind, defaultPolicy, completing(result)))
+			.whenComplete((id, e) -> {
+				if(e != null) result.completeExceptionally(e);
+			});
+		return result;
+	}
+
+	/**
+	 * Runs a statement on all the given sessions at once, e.g. for registering UDFs on every session.
+	 * @param sessions Target sessions
+	 * @param statement Statement code
+	 * @param timeout Deadline in milliseconds
+	 * @return Future completed when the statement completes on all the sessions or the deadline passes
+	 */
+	public CompletableFuture<BroadcastResult> broadcast(Collection<InteractiveSession> sessions, String statement, long timeout) {
+		return broadcast(sessions, statement, timeout, defaultPolicy);
+	}
+
+	/**
+	 * Runs a statement on all the given sessions at once.
+	 * The statements still running at the deadline are reported as timed out and keep running on livy server.
+	 * @param sessions Target sessions
+	 * @param statement Statement code
+	 * @param timeout Deadline in milliseconds
+	 * @param policy Policy for monitoring the statements
+	 * @return Future completed when the statement completes on all the sessions or the deadline passes
+	 */
+	public CompletableFuture<BroadcastResult> broadcast(Collection<InteractiveSession> sessions, String statement, long timeout, PollingPolicy policy) {
+		final long start = System.currentTimeMillis();
+		final List<BroadcastResult.Outcome> outcomes = new ArrayList<BroadcastResult.Outcome>();
+		for(InteractiveSession s : sessions) {
+			outcomes.add(new BroadcastResult.Outcome(s));
+		}
+		final CompletableFuture<BroadcastResult> done = executor.track(new CompletableFuture<BroadcastResult>());
+		final Runnable finish = () -> {
+			for(BroadcastResult.Outcome o : outcomes) o.expire();
+			done.complete(new BroadcastResult(outcomes, System.currentTimeMillis() - start));
+		};
+		if(outcomes.isEmpty()) {
+			finish.run();
+			return done;
+		}
+
+		final ScheduledFuture<?> deadline = AsyncExecutor.schedule(finish, timeout);
+		final AtomicInteger remaining = new AtomicInteger(outcomes.size());
+		for(BroadcastResult.Outcome o : outcomes) {
+			final BiConsumer<StatementResult, Throwable> complete = (r, e) -> {
+				if(o.complete(r, e) && remaining.decrementAndGet() == 0) {
+					deadline.cancel(false);
+					finish.run();
+				}
+			};
+			executor.call(() -> client.submitStatement(o.getSession(), statement, policy, new StatementResultListener() {
+				@Override
+				public void update(StatementResult r) {
+					complete.accept(r, null);
+				}
+
+				@Override
+				public void onError(Exception cause) {
+					complete.accept(null, cause);
+				}
+			}))
+				.whenComplete((id, e) -> {
+					if(e != null) complete.accept(null, e);
+				});
+		}
+		return done;
+	}
+
+	/**
+	 * Deletes the interactive session.
+	 * @return Future completed when the session is deleted
+	 */
+	public CompletableFuture<Void> deleteSession() {
+		return executor.call(() -> {
+			client.deleteSession();
+			return null;
+		});
+	}
+
+	/**
+	 * Deletes the given session.
+	 * @param s Session
+	 * @return Future completed when the session is deleted
+	 */
+	public CompletableFuture<Void> deleteSession(InteractiveSession s) {
+		return executor.call(() -> {
+			client.deleteSession(s);
+			return null;
+		});
+	}
+
+	/**
+	 * Completes a statement future from the poller, including when the statement can not be monitored.
+	 */
+	private static StatementResultListener completing(CompletableFuture<StatementResult> result) {
+		return new StatementResultListener() {
+			@Override
+			public void update(StatementResult r) {
+				result.complete(r);
+			}
+
+			@Override
+			public void onError(Exception cause) {
+				result.completeExceptionally(cause);
+			}
+		};
+	}
+
+	/**
+	 * Stops the executor created by this object. The futures still waiting for a session or a statement
+	 * complete exceptionally with CancellationException. The wrapped client is not closed.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -21,7 +21,9 @@ import java.net.PasswordAuthentication;
 
 /**
  * A class to be used for authentication against Spark cluster
+ * @deprecated The clients no longer install a JVM-global Authenticator. Use BasicCredentialsProvider.
  */
+@Deprecated
 public class BasicAuthenticator extends Authenticator {
 	private String password;
 	private String username;
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Credentials provider for HTTP Basic authentication with a fixed username and password.
+ * The header value is computed once and sent preemptively, so no 401 challenge round-trip is needed.
+ */
+public class BasicCredentialsProvider implements CredentialsProvider {
+
+	private final String authorization;
+
+	/**
+	 * Creates a provider.
+	 * @param user Username for spark cluster
+	 * @param pwd Password for spark cluster
+	 */
+	public BasicCredentialsProvider(String user, String pwd) {
+		authorization = toBasic(user, pwd);
+	}
+
+	@Override
+	public String getAuthorization() {
+		return authorization;
+	}
+
+	/**
+	 * Builds the value of a Basic Authorization header.
+	 * @param user Username
+	 * @param pwd Password
+	 * @return "Basic " followed by base64 of "user:pwd" in UTF-8
+	 */
+	public static String toBasic(String user, String pwd) {
+		String pair = user + ":" + (pwd == null ? "" : pwd);
+		return "Basic " + Base64.getEncoder().encodeToString(pair.getBytes(StandardCharsets.UTF_8));
+	}
+}
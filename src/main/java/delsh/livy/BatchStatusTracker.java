@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the state of many batch sessions with a single listing per interval.
+ * Instead of calling GET /batches/{id} for every batch, the tracker pages through GET /batches
+ * and updates all the tracked sessions from it, so the number of requests per interval does not
+ * grow with the number of batches. A batch missing from the listing is fetched by its id, and
+ * a batch that livy server no longer knows ends with Session.GONE. A batch whose fetch fails maxFailures
+ * times in a row, and every batch still tracked when the tracker is closed, is reported through onError().
+ */
+public class BatchStatusTracker implements Closeable {
+
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	private final LivyBatchClient client;
+	private final int pageSize;
+	private final ConcurrentHashMap<Integer, Tracked> tracked = new ConcurrentHashMap<Integer, Tracked>();
+	private final ScheduledThreadPoolExecutor scheduler;
+	private volatile int maxFailures = LivyPoller.DEFAULT_MAX_FAILURES;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a tracker with the default page size.
+	 * @param client Client used for listing the batches
+	 * @param interval Interval time in milliseconds between refreshes
+	 */
+	public BatchStatusTracker(LivyBatchClient client, long interval) {
+		this(client, interval, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Creates a tracker.
+	 * @param client Client used for listing the batches
+	 * @param interval Interval time in milliseconds between refreshes
+	 * @param pageSize Number of batches requested per page of GET /batches
+	 */
+	public BatchStatusTracker(LivyBatchClient client, long interval, int pageSize) {
+		if(pageSize < 1) throw new IllegalArgumentException("Page size must be positive.");
+		this.client = client;
+		this.pageSize = pageSize;
+		scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "livy-batch-tracker");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				refresh();
+			} catch(IOException | RuntimeException e) {
+				// Retried on the next interval.
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts tracking the batch session. The listener is called when the state changes,
+	 * and the session is no longer tracked when the listener returns false or the batch finishes.
+	 * @param s Batch session
+	 * @param listener A listener to receive the status
+	 */
+	public void track(BatchSession s, SessionEventListener listener) {
+		Tracked t = new Tracked(s, listener);
+		tracked.put(s.getId(), t);
+		if(closed) fail(t, new CancellationException("Tracker is closed."));
+	}
+
+	/**
+	 * Stops tracking the batch session.
+	 * @param s Batch session
+	 */
+	public void untrack(BatchSession s) {
+		tracked.remove(s.getId());
+	}
+
+	/**
+	 * Sets the number of consecutive failures to fetch a missing batch by its id, after which
+	 * the batch is no longer tracked and its listener is notified through onError().
+	 * @param num Number of failures
+	 */
+	public void setMaxFailures(int num) {
+		if(num < 1) throw new IllegalArgumentException("maxFailures must be positive.");
+		maxFailures = num;
+	}
+
+	public int getMaxFailures() {
+		return maxFailures;
+	}
+
+	public int getTrackedCount() {
+		return tracked.size();
+	}
+
+	/**
+	 * Updates all the tracked sessions now. This is also called on every interval.
+	 * @return Number of requests sent
+	 * @throws IOException
+	 */
+	public synchronized int refresh() throws IOException {
+		if(tracked.isEmpty()) return 0;
+
+		Map<Integer, SessionInfo> found = new HashMap<Integer, SessionInfo>();
+		int requests = 0;
+		int from = 0;
+		int total;
+		do {
+			total = client.listSessions("/batches", from, pageSize, info -> {
+				if(tracked.containsKey(info.id)) found.put(info.id, info);
+			});
+			requests++;
+			from += pageSize;
+		} while(from < total && found.size() < tracked.size());
+
+		List<Tracked> missing = new ArrayList<Tracked>();
+		for(Tracked t : tracked.values()) {
+			SessionInfo info = found.get(t.session.getId());
+			if(info == null) {
+				missing.add(t);
+				continue;
+			}
+			t.failures = 0;
+			t.session.setState(Session.toState(info.state));
+			if(info.appId != null) t.session.setAppId(info.appId);
+			notify(t);
+		}
+		for(Tracked t : missing) {
+			requests++;
+			try {
+				if(client.refreshSession(t.session) == false) t.session.setState(Session.GONE);
+			} catch(IOException e) {
+				// Retried on the next refresh until maxFailures, and the other batches are still updated.
+				if(++t.failures >= maxFailures) fail(t, e);
+				continue;
+			}
+			t.failures = 0;
+			notify(t);
+		}
+		return requests;
+	}
+
+	/**
+	 * Stops refreshing. Every tracked listener is notified with CancellationException.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		scheduler.shutdownNow();
+		for(Tracked t : tracked.values()) fail(t, new CancellationException("Tracker is closed."));
+	}
+
+	private void notify(Tracked t) {
+		int state = t.session.getState();
+		if(state == t.lastState) return;
+		t.lastState = state;
+		boolean cont = t.listener.updateStatus(t.session);
+		if(cont == false || LivyBatchClient.isFinished(state)) tracked.remove(t.session.getId(), t);
+	}
+
+	private void fail(Tracked t, Exception cause) {
+		if(tracked.remove(t.session.getId(), t) == false) return;
+		try {
+			t.listener.onError(cause);
+		} catch(RuntimeException e) {
+			LivyPoller.report(e);
+		}
+	}
+
+	private static class Tracked {
+		final BatchSession session;
+		final SessionEventListener listener;
+		int lastState = -1;
+		int failures = 0;
+
+		Tracked(BatchSession session, SessionEventListener listener) {
+			this.session = session;
+			this.listener = listener;
+		}
+	}
+}
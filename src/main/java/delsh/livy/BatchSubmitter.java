@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Submits a large number of batch jobs with bounded concurrency and a rate limit.
+ * Jobs are queued and submitted in order by a background thread, while at most maxInFlight
+ * batches are running and at most requestsPerSecond batches are created per second.
+ * Every batch is monitored by the poller of the client, or by the BatchStatusTracker set to the
+ * configuration, and its future completes when the batch reaches SUCCESS, DEAD or ERROR, or GONE
+ * when the tracker finds it removed from livy server. GONE is counted as failed.
+ */
+public class BatchSubmitter implements Closeable {
+
+	private final LivyBatchClient client;
+	private final BatchSubmitterConf conf;
+	private final Semaphore inFlight;
+	private final RateLimiter limiter;
+	private final AsyncExecutor executor;
+	private final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<Job>();
+	private final Thread dispatcher;
+	private volatile boolean closed = false;
+
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong succeededCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	/**
+	 * Creates a submitter.
+	 * @param client Client used for submitting and monitoring the batches
+	 * @param conf Submitter configuration
+	 */
+	public BatchSubmitter(LivyBatchClient client, BatchSubmitterConf conf) {
+		this.client = client;
+		this.conf = conf;
+		inFlight = new Semaphore(conf.getMaxInFlight());
+		limiter = new RateLimiter(conf.getRequestsPerSecond());
+		executor = new AsyncExecutor(null);
+		dispatcher = new Thread(this::dispatch, "livy-batch-submitter");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Queues a batch job.
+	 * @param req BatchJobParameters object
+	 * @return Future completed with the session once the batch reaches SUCCESS, DEAD, ERROR or GONE.
+	 *  Check Session.getState() for the outcome. The future completes exceptionally if the batch cannot be created
+	 *  or its status cannot be polled.
+	 */
+	public CompletableFuture<BatchSession> submit(BatchJobParameters req) {
+		Job job = new Job(req);
+		if(closed) {
+			job.future.completeExceptionally(new LivyException("Submitter is already closed."));
+		} else {
+			queue.add(job);
+		}
+		return job.future;
+	}
+
+	/**
+	 * Queues batch jobs.
+	 * @param reqs BatchJobParameters objects
+	 * @return Futures in the same order as the jobs
+	 */
+	public List<CompletableFuture<BatchSession>> submitAll(Iterable<BatchJobParameters> reqs) {
+		List<CompletableFuture<BatchSession>> futures = new ArrayList<CompletableFuture<BatchSession>>();
+		for(BatchJobParameters req : reqs) {
+			futures.add(submit(req));
+		}
+		return futures;
+	}
+
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	public int getInFlightCount() {
+		return conf.getMaxInFlight() - inFlight.availablePermits();
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	public long getSucceededCount() {
+		return succeededCount.get();
+	}
+
+	/**
+	 * Gets the number of the batches finished with DEAD or ERROR, or not created.
+	 * @return Number of failed batches
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * Stops submitting. The futures of the queued jobs complete exceptionally.
+	 * The batches already submitted keep being monitored until the client is closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		dispatcher.interrupt();
+		Job job;
+		while((job = queue.poll()) != null) {
+			job.future.completeExceptionally(new LivyException("Submitter is closed."));
+		}
+		executor.shutdown();
+	}
+
+	private void dispatch() {
+		while(closed == false) {
+			Job job = null;
+			try {
+				job = queue.take();
+				inFlight.acquire();
+			} catch(InterruptedException e) {
+				if(job != null) job.future.completeExceptionally(new LivyException("Submitter is closed."));
+				return;
+			}
+			// The permit is given back however the job ends, including poll errors.
+			job.future.whenComplete((s, e) -> inFlight.release());
+			try {
+				limiter.acquire();
+			} catch(InterruptedIOException e) {
+				job.future.completeExceptionally(new LivyException("Submitter is closed."));
+				return;
+			}
+			final Job j = job;
+			final SessionEventListener listener = new SessionEventListener() {
+				@Override
+				public boolean updateStatus(Session event) {
+					if(LivyBatchClient.isFinished(event.getState()) == false) return j.future.isDone() == false;
+					if(j.future.complete((BatchSession)event)) {
+						(event.getState() == Session.SUCCESS ? succeededCount : failedCount).incrementAndGet();
+					}
+					return false;
+				}
+
+				@Override
+				public void onError(Exception cause) {
+					if(j.future.completeExceptionally(cause)) failedCount.incrementAndGet();
+				}
+			};
+			executor.call(() -> {
+				BatchStatusTracker tracker = conf.getStatusTracker();
+				if(tracker == null) return client.createJob(j.req, conf.getPollingPolicy(), listener);
+				BatchSession s = (BatchSession)client.createJob(j.req);
+				tracker.track(s, listener);
+				return s;
+			}).whenComplete((s, e) -> {
+				if(e == null) {
+					submittedCount.incrementAndGet();
+				} else if(j.future.completeExceptionally(e)) {
+					failedCount.incrementAndGet();
+				}
+			});
+		}
+	}
+
+	private static class Job {
+		final BatchJobParameters req;
+		final CompletableFuture<BatchSession> future = new CompletableFuture<BatchSession>();
+
+		Job(BatchJobParameters req) {
+			this.req = req;
+		}
+	}
+}
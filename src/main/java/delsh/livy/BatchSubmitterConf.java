@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+/**
+ * Configuration for BatchSubmitter.
+ */
+public class BatchSubmitterConf {
+
+	private int maxInFlight = 16;
+	private double requestsPerSecond = 5;
+	private PollingPolicy pollingPolicy = new JitteredPollingPolicy(new ExponentialPollingPolicy(1000, 30000, 2), 0.1);
+	private BatchStatusTracker statusTracker = null;
+
+	/**
+	 * Sets the maximum number of batches that are submitted and not finished yet.
+	 * @param num Number of batches
+	 */
+	public void setMaxInFlight(int num) {
+		if(num < 1) throw new IllegalArgumentException("maxInFlight must be positive.");
+		maxInFlight = num;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Sets the maximum number of batches submitted per second.
+	 * @param rps Requests per second. 0 means no limit.
+	 */
+	public void setRequestsPerSecond(double rps) {
+		if(rps < 0) throw new IllegalArgumentException("requestsPerSecond must not be negative.");
+		requestsPerSecond = rps;
+	}
+
+	public double getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+	/**
+	 * Sets the policy used for monitoring the submitted batches.
+	 * @param policy Polling policy
+	 */
+	public void setPollingPolicy(PollingPolicy policy) {
+		pollingPolicy = policy;
+	}
+
+	public PollingPolicy getPollingPolicy() {
+		return pollingPolicy;
+	}
+
+	/**
+	 * Sets the tracker that monitors the submitted batches with a single listing per interval.
+	 * When it is set, the polling policy is not used.
+	 * @param tracker Batch status tracker, or null to monitor each batch with the poller of the client
+	 */
+	public void setStatusTracker(BatchStatusTracker tracker) {
+		statusTracker = tracker;
+	}
+
+	public BatchStatusTracker getStatusTracker() {
+		return statusTracker;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Combined result of a statement run on many sessions by AsyncLivyInteractiveClient.broadcast().
+ */
+public class BroadcastResult {
+
+	/**
+	 * Outcome of the statement on one session.
+	 */
+	public static class Outcome {
+		private final InteractiveSession session;
+		private final long start = System.currentTimeMillis();
+		private volatile StatementResult result = null;
+		private volatile Throwable error = null;
+		private volatile long latency = -1;
+		private boolean expired = false;
+
+		Outcome(InteractiveSession session) {
+			this.session = session;
+		}
+
+		public InteractiveSession getSession() {
+			return session;
+		}
+
+		/**
+		 * Gets the result of the statement.
+		 * @return Result, or null if the statement failed to be submitted or did not complete by the deadline
+		 */
+		public StatementResult getResult() {
+			return result;
+		}
+
+		/**
+		 * Gets the error that prevented the statement from being submitted.
+		 * @return Error, or null
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		/**
+		 * Gets the time from the submission to the completion or the failure.
+		 * @return Latency in milliseconds, or -1 if the statement did not complete by the deadline
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Checks if the statement completed with the "ok" status.
+		 * @return true if succeeded
+		 */
+		public boolean isSucceeded() {
+			StatementResult r = result;
+			return r != null && "ok".equals(r.getStatus());
+		}
+
+		public boolean isTimedOut() {
+			return latency < 0;
+		}
+
+		synchronized boolean complete(StatementResult r, Throwable e) {
+			if(latency >= 0 || expired) return false;
+			result = r;
+			error = e;
+			latency = System.currentTimeMillis() - start;
+			return true;
+		}
+
+		/**
+		 * Ignores a completion after the deadline, so that the combined result does not change.
+		 */
+		synchronized void expire() {
+			expired = true;
+		}
+	}
+
+	private final List<Outcome> outcomes;
+	private final long elapsed;
+
+	BroadcastResult(List<Outcome> outcomes, long elapsed) {
+		this.outcomes = Collections.unmodifiableList(new ArrayList<Outcome>(outcomes));
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * Gets the outcomes in the same order as the sessions.
+	 * @return Outcomes
+	 */
+	public List<Outcome> getOutcomes() {
+		return outcomes;
+	}
+
+	/**
+	 * Gets the outcome of the given session.
+	 * @param s Session
+	 * @return Outcome, or null if the session was not a target
+	 */
+	public Outcome getOutcome(InteractiveSession s) {
+		for(Outcome o : outcomes) {
+			if(o.session == s) return o;
+		}
+		return null;
+	}
+
+	public int getSucceededCount() {
+		int n = 0;
+		for(Outcome o : outcomes) {
+			if(o.isSucceeded()) n++;
+		}
+		return n;
+	}
+
+	public int getTimedOutCount() {
+		int n = 0;
+		for(Outcome o : outcomes) {
+			if(o.isTimedOut()) n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Checks if the statement succeeded on all the sessions.
+	 * @return true if all succeeded
+	 */
+	public boolean isAllSucceeded() {
+		return getSucceededCount() == outcomes.size();
+	}
+
+	/**
+	 * Gets the time from the start of the broadcast to the last completion or the deadline.
+	 * @return Time in milliseconds
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * A table returned as application/json output (e.g. by a SQL statement), decoded column by column.
+ * Numeric columns are backed by primitive arrays and string columns are dictionary-encoded,
+ * so a large numeric result can be consumed without boxing or parsing text.
+ * A table can also be decoded from json with JsonConverter.toObject(ColumnarTable.class, json).
+ */
+@JsonDeserialize(using = TableDeserializer.class)
+public class ColumnarTable {
+
+	/**
+	 * Type of a column. Spark types are mapped as follows: byte, short and integer to INT, long to LONG,
+	 * float, double and decimal to DOUBLE, boolean to BOOLEAN, and the others to STRING.
+	 * Complex types such as struct and array are kept as their json text.
+	 */
+	public enum ColumnType {
+		INT, LONG, DOUBLE, BOOLEAN, STRING;
+
+		static ColumnType fromSpark(String type) {
+			if(type == null) return STRING;
+			switch(type) {
+			case "byte":
+			case "short":
+			case "integer":	return INT;
+			case "long":	return LONG;
+			case "float":
+			case "double":	return DOUBLE;
+			case "boolean":	return BOOLEAN;
+			default:		return type.startsWith("decimal") ? DOUBLE : STRING;
+			}
+		}
+	}
+
+	/**
+	 * A column of the table. Null values are read as 0, false or null with isNull() true.
+	 */
+	public abstract static class Column {
+		private final String name;
+		private final ColumnType type;
+		final BitSet nulls = new BitSet();
+
+		Column(String name, ColumnType type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public ColumnType getType() {
+			return type;
+		}
+
+		public boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		abstract void trim(int rows);
+	}
+
+	public static class IntColumn extends Column {
+		private int[] values = new int[16];
+
+		IntColumn(String name) {
+			super(name, ColumnType.INT);
+		}
+
+		public int get(int row) {
+			return values[row];
+		}
+
+		/**
+		 * Gets the backing array. Its length is the number of rows.
+		 * @return Values
+		 */
+		public int[] getValues() {
+			return values;
+		}
+
+		void set(int row, int v) {
+			if(row >= values.length) values = Arrays.copyOf(values, values.length * 2);
+			values[row] = v;
+		}
+
+		@Override
+		void trim(int rows) {
+			if(values.length != rows) values = Arrays.copyOf(values, rows);
+		}
+	}
+
+	public static class LongColumn extends Column {
+		private long[] values = new long[16];
+
+		LongColumn(String name) {
+			super(name, ColumnType.LONG);
+		}
+
+		public long get(int row) {
+			return values[row];
+		}
+
+		/**
+		 * Gets the backing array. Its length is the number of rows.
+		 * @return Values
+		 */
+		public long[] getValues() {
+			return values;
+		}
+
+		void set(int row, long v) {
+			if(row >= values.length) values = Arrays.copyOf(values, values.length * 2);
+			values[row] = v;
+		}
+
+		@Override
+		void trim(int rows) {
+			if(values.length != rows) values = Arrays.copyOf(values, rows);
+		}
+	}
+
+	public static class DoubleColumn extends Column {
+		private double[] values = new double[16];
+
+		DoubleColumn(String name) {
+			super(name, ColumnType.DOUBLE);
+		}
+
+		public double get(int row) {
+			return values[row];
+		}
+
+		/**
+		 * Gets the backing array. Its length is the number of rows.
+		 * @return Values
+		 */
+		public double[] getValues() {
+			return values;
+		}
+
+		void set(int row, double v) {
+			if(row >= values.length) values = Arrays.copyOf(values, values.length * 2);
+			values[row] = v;
+		}
+
+		@Override
+		void trim(int rows) {
+			if(values.length != rows) values = Arrays.copyOf(values, rows);
+		}
+	}
+
+	public static class BooleanColumn extends Column {
+		private final BitSet values = new BitSet();
+
+		BooleanColumn(String name) {
+			super(name, ColumnType.BOOLEAN);
+		}
+
+		public boolean get(int row) {
+			return values.get(row);
+		}
+
+		void set(int row, boolean v) {
+			values.set(row, v);
+		}
+
+		@Override
+		void trim(int rows) {
+		}
+	}
+
+	/**
+	 * A string column encoded with a dictionary. Each row holds the code of its value in the dictionary.
+	 */
+	public static class StringColumn extends Column {
+		private int[] codes = new int[16];
+		private final List<String> dictionary = new ArrayList<String>();
+		private HashMap<String, Integer> lookup = new HashMap<String, Integer>();
+
+		StringColumn(String name) {
+			super(name, ColumnType.STRING);
+		}
+
+		public String get(int row) {
+			return isNull(row) ? null : dictionary.get(codes[row]);
+		}
+
+		/**
+		 * Gets the code of the value in the dictionary.
+		 * @param row Row index
+		 * @return Code, or -1 for null
+		 */
+		public int getCode(int row) {
+			return codes[row];
+		}
+
+		/**
+		 * Gets the backing array of the codes. Its length is the number of rows, and -1 is null.
+		 * @return Codes
+		 */
+		public int[] getCodes() {
+			return codes;
+		}
+
+		/**
+		 * Gets the distinct values in the order of appearance.
+		 * @return Dictionary
+		 */
+		public List<String> getDictionary() {
+			return Collections.unmodifiableList(dictionary);
+		}
+
+		void setNull(int row) {
+			if(row >= codes.length) codes = Arrays.copyOf(codes, codes.length * 2);
+			codes[row] = -1;
+		}
+
+		void set(int row, String v) {
+			if(row >= codes.length) codes = Arrays.copyOf(codes, codes.length * 2);
+			Integer code = lookup.get(v);
+			if(code == null) {
+				code = dictionary.size();
+				dictionary.add(v);
+				lookup.put(v, code);
+			}
+			codes[row] = code;
+		}
+
+		@Override
+		void trim(int rows) {
+			if(codes.length != rows) codes = Arrays.copyOf(codes, rows);
+			lookup = null;
+		}
+	}
+
+	private final List<Column> columns;
+	private final int rows;
+
+	ColumnarTable(List<Column> columns, int rows) {
+		for(Column c : columns) {
+			c.trim(rows);
+		}
+		this.columns = Collections.unmodifiableList(new ArrayList<Column>(columns));
+		this.rows = rows;
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	public Column getColumn(int index) {
+		return columns.get(index);
+	}
+
+	/**
+	 * Gets the column of the given name.
+	 * @param name Column name
+	 * @return Column, or null if not found
+	 */
+	public Column getColumn(String name) {
+		for(Column c : columns) {
+			if(c.getName().equals(name)) return c;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets a table that shares the columns of this table except the given one.
+	 */
+	ColumnarTable without(String name) {
+		List<Column> list = new ArrayList<Column>(columns);
+		list.remove(getColumn(name));
+		return new ColumnarTable(list, rows);
+	}
+
+	static Column newColumn(String name, ColumnType type) {
+		switch(type) {
+		case INT:		return new IntColumn(name);
+		case LONG:		return new LongColumn(name);
+		case DOUBLE:	return new DoubleColumn(name);
+		case BOOLEAN:	return new BooleanColumn(name);
+		default:		return new StringColumn(name);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+
+/**
+ * Supplies the value of the Authorization header attached to every request of a client.
+ * A provider is used per client, so clients with different credentials can run in the same JVM.
+ */
+public interface CredentialsProvider {
+
+	/**
+	 * Gets the value of the Authorization header.
+	 * @return Header value such as "Basic ...", or null to send no Authorization header
+	 * @throws IOException
+	 */
+	String getAuthorization() throws IOException;
+
+	/**
+	 * Called when livy server rejected the header with 401.
+	 * A provider that can obtain new credentials reloads them here, and the request is sent once more.
+	 * @return true if the credentials may have changed
+	 * @throws IOException
+	 */
+	default boolean refresh() throws IOException {
+		return false;
+	}
+}
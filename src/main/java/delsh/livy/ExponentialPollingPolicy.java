@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+/**
+ * Starts polling quickly and backs off exponentially up to the cap.
+ * For example, initial 50ms with multiplier 2 and cap 5s polls after 50, 100, 200, ... 5000, 5000 ms.
+ */
+public class ExponentialPollingPolicy implements PollingPolicy {
+
+	private final long initial;
+	private final long max;
+	private final double multiplier;
+
+	/**
+	 * @param initial The first delay in milliseconds
+	 * @param max The maximum delay in milliseconds
+	 * @param multiplier Factor applied to the delay on every poll. Must be 1 or above.
+	 */
+	public ExponentialPollingPolicy(long initial, long max, double multiplier) {
+		if(initial < 0 || max < initial) throw new IllegalArgumentException("0 <= initial <= max is required.");
+		if(multiplier < 1) throw new IllegalArgumentException("multiplier must be 1 or above.");
+		this.initial = initial;
+		this.max = max;
+		this.multiplier = multiplier;
+	}
+
+	@Override
+	public long nextDelay(int attempt, long elapsed, double progress) {
+		double delay = initial * Math.pow(multiplier, Math.max(0, attempt - 1));
+		return (delay >= max) ? max : (long)delay;
+	}
+}
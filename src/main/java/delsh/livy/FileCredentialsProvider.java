@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Credentials provider for HTTP Basic authentication that reads "user:password" from the first line of a file.
+ * The file is checked for modification at most once per check interval and whenever livy server returns 401,
+ * so the password can be rotated without restarting the client.
+ */
+public class FileCredentialsProvider implements CredentialsProvider {
+
+	public static final long DEFAULT_CHECK_INTERVAL = 10000;
+
+	private final Path file;
+	private final long checkInterval;
+	private String authorization = null;
+	private long lastModified = -1;
+	private long lastChecked = 0;
+
+	/**
+	 * Creates a provider with the default check interval.
+	 * @param file File that contains "user:password"
+	 */
+	public FileCredentialsProvider(Path file) {
+		this(file, DEFAULT_CHECK_INTERVAL);
+	}
+
+	/**
+	 * Creates a provider.
+	 * @param file File that contains "user:password"
+	 * @param checkInterval Minimum interval in milliseconds between checks of the file
+	 */
+	public FileCredentialsProvider(Path file, long checkInterval) {
+		this.file = file;
+		this.checkInterval = checkInterval;
+	}
+
+	@Override
+	public synchronized String getAuthorization() throws IOException {
+		long now = System.currentTimeMillis();
+		if(authorization == null || now - lastChecked >= checkInterval) {
+			load(now);
+		}
+		return authorization;
+	}
+
+	@Override
+	public synchronized boolean refresh() throws IOException {
+		String old = authorization;
+		load(System.currentTimeMillis());
+		return authorization.equals(old) == false;
+	}
+
+	private void load(long now) throws IOException {
+		lastChecked = now;
+		long modified = Files.getLastModifiedTime(file).toMillis();
+		if(authorization != null && modified == lastModified) return;
+
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		String line = lines.isEmpty() ? "" : lines.get(0).trim();
+		int sep = line.indexOf(':');
+		if(sep < 0) throw new IOException("Credentials file must contain user:password. " + file);
+		authorization = BasicCredentialsProvider.toBasic(line.substring(0, sep), line.substring(sep + 1));
+		lastModified = modified;
+	}
+}
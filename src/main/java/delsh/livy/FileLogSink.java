@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * LogSink that appends the log lines to a file. The file is flushed after every page of lines.
+ */
+public class FileLogSink implements LogSink, Closeable {
+
+	private final BufferedWriter writer;
+
+	/**
+	 * Opens the file for appending. The file is created if it does not exist.
+	 * @param file Log file
+	 * @throws IOException
+	 */
+	public FileLogSink(Path file) throws IOException {
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	@Override
+	public synchronized void onLines(int from, List<String> lines) throws IOException {
+		for(String line : lines) {
+			writer.write(line);
+			writer.newLine();
+		}
+		writer.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+}
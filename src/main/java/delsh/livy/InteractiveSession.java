@@ -16,13 +16,17 @@
  */
 package delsh.livy;
 
+import java.util.List;
+
 /**
  * Represents a session data for an interactive mode.
  */
 public class InteractiveSession extends Session {
 
-	private String proxyUser = null;
-	private SessionKind kind = SessionKind.SPARK;
+	private volatile String proxyUser = null;
+	private volatile SessionKind kind = SessionKind.SPARK;
+	// Results of the statements monitored by the client. Written by the poller thread.
+	private volatile StatementHistory history = new StatementHistory();
 
 	/**
 	 * Creates an interactive session object.
@@ -63,4 +67,47 @@ public class InteractiveSession extends Session {
 	public SessionKind getKind() {
 		return kind;
 	}
+
+	/**
+	 * Gets the history of the results of the statements submitted with a listener.
+	 * @return Statement history
+	 */
+	public StatementHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * Replaces the history, e.g. with one that has different bounds or a spill directory.
+	 * The results in the current history are not moved.
+	 * @param h Statement history
+	 */
+	public void setHistory(StatementHistory h) {
+		history = h;
+	}
+
+	/**
+	 * Gets the results of the statements submitted with a listener, in the order of completion.
+	 * Only the results kept in memory by the history are returned.
+	 * @return Copy of the results
+	 */
+	public List<StatementResult> getResults() {
+		return history.getResults();
+	}
+
+	/**
+	 * Gets the result of the statement submitted with a listener.
+	 * @param statementId Statement id
+	 * @return Result, or null if the statement is not completed yet or no longer in the history
+	 */
+	public StatementResult getResult(int statementId) {
+		return history.get(statementId);
+	}
+
+	void addResult(StatementResult result) {
+		history.add(result);
+	}
+
+	void clearResults() {
+		history.clear();
+	}
 }
@@ -0,0 +1,509 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of warm interactive sessions.
+ * Starting an interactive session takes tens of seconds, so the pool keeps idle sessions per
+ * InteractiveJobParameters profile and hands them out with checkout() / checkin().
+ * Idle sessions are checked in the background, dead ones are replaced, and the ones unused
+ * for longer than the idle timeout are deleted.
+ */
+public class InteractiveSessionPool implements Closeable {
+
+	private static final long CLOSE_TIMEOUT = 2 * 60 * 1000L;
+
+	private final SessionPoolConf conf;
+	private final LivyInteractiveClient client;
+	private final ScheduledThreadPoolExecutor maintainer;
+	private final Map<String, Profile> profiles = new HashMap<String, Profile>();
+	private boolean closed = false;
+
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long totalWaitTime = 0;
+	private long maxWaitTime = 0;
+	private long createdCount = 0;
+	private long replacedCount = 0;
+	private long retiredCount = 0;
+
+	/**
+	 * Creates a session pool.
+	 * @param uri URI that is https://{cluster-endpoint}/livy
+	 * @param user Username for spark cluster
+	 * @param pwd Password for spark cluster
+	 * @param conf Pool configuration
+	 * @throws MalformedURLException
+	 */
+	public InteractiveSessionPool(String uri, String user, String pwd, SessionPoolConf conf) throws MalformedURLException {
+		this(uri, new BasicCredentialsProvider(user, pwd), conf);
+	}
+
+	/**
+	 * Creates a session pool.
+	 * @param uri URI that is https://{cluster-endpoint}/livy
+	 * @param credentials Provider of the Authorization header
+	 * @param conf Pool configuration
+	 * @throws MalformedURLException
+	 */
+	public InteractiveSessionPool(String uri, CredentialsProvider credentials, SessionPoolConf conf) throws MalformedURLException {
+		this(uri, credentials, null, conf);
+	}
+
+	/**
+	 * Creates a session pool.
+	 * @param uri URI that is https://{cluster-endpoint}/livy
+	 * @param credentials Provider of the Authorization header
+	 * @param transport Transport that sends the requests, or null for the default one
+	 * @param conf Pool configuration
+	 * @throws MalformedURLException
+	 */
+	public InteractiveSessionPool(String uri, CredentialsProvider credentials, LivyTransport transport, SessionPoolConf conf) throws MalformedURLException {
+		this.conf = conf;
+		client = new LivyInteractiveClient(uri, credentials, transport);
+		maintainer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "livy-session-pool");
+			t.setDaemon(true);
+			return t;
+		});
+		maintainer.scheduleWithFixedDelay(this::maintain, conf.getHealthCheckInterval(), conf.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts minIdle sessions for the profile in the background.
+	 * @param req Profile of the sessions
+	 * @throws IOException
+	 */
+	public void warmUp(InteractiveJobParameters req) throws IOException {
+		synchronized(this) {
+			checkOpen();
+			fill(profile(req));
+		}
+	}
+
+	/**
+	 * Borrows an idle session for the profile. A new session is started when there is no idle one
+	 * and the profile has not reached maxTotal.
+	 * @param req Profile of the session
+	 * @param timeout Maximum time in milliseconds to wait for a session
+	 * @return Pooled session. Give it back with checkin().
+	 * @throws IOException
+	 * @throws LivyException Thrown when no session becomes available within the timeout
+	 * @throws InterruptedException
+	 */
+	public PooledSession checkout(InteractiveJobParameters req, long timeout) throws IOException, LivyException, InterruptedException {
+		long start = System.currentTimeMillis();
+		long deadline = start + timeout;
+		boolean hit = true;
+
+		synchronized(this) {
+			checkOpen();
+			Profile p = profile(req);
+			p.waiting++;
+			try {
+				while(true) {
+					PooledSession s = p.takeIdle();
+					if(s != null) {
+						s.poolState = PooledSession.IN_USE;
+						recordCheckout(hit, System.currentTimeMillis() - start);
+						return s;
+					}
+					hit = false;
+					if(p.count(PooledSession.STARTING) < p.waiting && p.sessions.size() < conf.getMaxTotal()) {
+						startSession(p);
+					}
+					long remain = deadline - System.currentTimeMillis();
+					if(remain <= 0) {
+						recordCheckout(false, System.currentTimeMillis() - start);
+						throw new LivyException("Timed out waiting for a pooled session.");
+					}
+					wait(remain);
+					checkOpen();
+				}
+			} finally {
+				p.waiting--;
+			}
+		}
+	}
+
+	/**
+	 * Gives the session back to the pool.
+	 * @param s Pooled session
+	 */
+	public void checkin(PooledSession s) {
+		boolean retire = false;
+		synchronized(this) {
+			if(s.poolState != PooledSession.IN_USE) return;
+			int state = s.getSession().getState();
+			if(closed || isGone(state)) {
+				retire = detach(s);
+			} else {
+				s.poolState = PooledSession.IDLE;
+				s.lastUsed = System.currentTimeMillis();
+				notifyAll();
+			}
+		}
+		if(retire) deleteLater(s);
+	}
+
+	/**
+	 * Removes a broken session from the pool and deletes it. Use this instead of checkin()
+	 * when the session can not be used any more.
+	 * @param s Pooled session
+	 */
+	public void invalidate(PooledSession s) {
+		boolean retire;
+		synchronized(this) {
+			retire = detach(s);
+			if(retire) replacedCount++;
+		}
+		if(retire) deleteLater(s);
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Gets the average time spent in checkout().
+	 * @return Time in milliseconds
+	 */
+	public synchronized long getAverageWaitTime() {
+		long count = hitCount + missCount;
+		return (count == 0) ? 0 : totalWaitTime / count;
+	}
+
+	/**
+	 * Gets the longest time spent in checkout().
+	 * @return Time in milliseconds
+	 */
+	public synchronized long getMaxWaitTime() {
+		return maxWaitTime;
+	}
+
+	/**
+	 * Gets the number of sessions created by the pool.
+	 * @return Number of sessions
+	 */
+	public synchronized long getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * Gets the number of sessions replaced because they became dead or failed to start.
+	 * @return Number of sessions
+	 */
+	public synchronized long getReplacedCount() {
+		return replacedCount;
+	}
+
+	/**
+	 * Gets the number of sessions deleted after the idle timeout.
+	 * @return Number of sessions
+	 */
+	public synchronized long getRetiredCount() {
+		return retiredCount;
+	}
+
+	/**
+	 * Gets the number of idle sessions of all the profiles.
+	 * @return Number of sessions
+	 */
+	public synchronized int getIdleCount() {
+		int count = 0;
+		for(Profile p : profiles.values()) count += p.count(PooledSession.IDLE) + p.count(PooledSession.CHECKING);
+		return count;
+	}
+
+	/**
+	 * Gets the number of sessions of all the profiles, including starting ones and the ones in use.
+	 * @return Number of sessions
+	 */
+	public synchronized int getTotalCount() {
+		int count = 0;
+		for(Profile p : profiles.values()) count += p.sessions.size();
+		return count;
+	}
+
+	/**
+	 * Deletes all the sessions and stops the pool.
+	 * A session still being created is deleted as soon as livy server returns its id.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		List<PooledSession> all = new ArrayList<PooledSession>();
+		synchronized(this) {
+			if(closed) return;
+			closed = true;
+			for(Profile p : profiles.values()) {
+				for(PooledSession s : p.sessions) {
+					s.poolState = PooledSession.RETIRED;
+					// The others have no id yet. startSession() deletes them once they are created.
+					if(s.session != null) all.add(s);
+				}
+				p.sessions.clear();
+			}
+			notifyAll();
+		}
+		// The queued creations and deletions still run, so that no session is left on the cluster.
+		maintainer.shutdown();
+		for(PooledSession s : all) delete(s);
+		try {
+			maintainer.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		client.close();
+	}
+
+	private void checkOpen() throws IOException {
+		if(closed) throw new IOException("Session pool is already closed.");
+	}
+
+	private void recordCheckout(boolean hit, long wait) {
+		if(hit) hitCount++;
+		else missCount++;
+		totalWaitTime += wait;
+		if(wait > maxWaitTime) maxWaitTime = wait;
+	}
+
+	private Profile profile(InteractiveJobParameters req) throws IOException {
+		String key = JsonConverter.toJson(req);
+		Profile p = profiles.get(key);
+		if(p == null) {
+			p = new Profile(key, req);
+			profiles.put(key, p);
+		}
+		return p;
+	}
+
+	// Must be called with the lock held.
+	private void fill(Profile p) {
+		while(p.count(PooledSession.IDLE) + p.count(PooledSession.CHECKING) + p.count(PooledSession.STARTING) < conf.getMinIdle()
+				&& p.sessions.size() < conf.getMaxTotal()) {
+			startSession(p);
+		}
+	}
+
+	// Must be called with the lock held. The session is registered here and created in the background.
+	private void startSession(final Profile p) {
+		final PooledSession s = new PooledSession(p.key, client);
+		p.sessions.add(s);
+		maintainer.execute(() -> {
+			synchronized(this) {
+				if(s.poolState == PooledSession.RETIRED) return;
+			}
+			try {
+				InteractiveSession created = client.createSession(p.req, conf.getStartPolicy(), new SessionEventListener() {
+					@Override
+					public boolean updateStatus(Session event) {
+						return onStatus(s, event);
+					}
+
+					@Override
+					public void onError(Exception cause) {
+						// The session can not be monitored, so it would hold a slot of maxTotal forever.
+						retire(s);
+					}
+				});
+				boolean orphan;
+				synchronized(this) {
+					s.session = created;
+					createdCount++;
+					orphan = (s.poolState == PooledSession.RETIRED);
+				}
+				// The pool was closed while the session was being created.
+				if(orphan) delete(s);
+			} catch(IOException | LivyException | RuntimeException e) {
+				// The slot is freed, and the next checkout() or health check starts another session.
+				synchronized(this) {
+					if(detach(s)) replacedCount++;
+				}
+			}
+		});
+	}
+
+	private void retire(PooledSession s) {
+		boolean retire;
+		synchronized(this) {
+			retire = detach(s);
+			if(retire) replacedCount++;
+		}
+		if(retire) deleteLater(s);
+	}
+
+	private boolean onStatus(PooledSession s, Session event) {
+		int state = event.getState();
+		if(state == Session.IDLE) {
+			synchronized(this) {
+				if(s.poolState == PooledSession.STARTING) {
+					s.session = (InteractiveSession)event;
+					s.poolState = PooledSession.IDLE;
+					s.lastUsed = System.currentTimeMillis();
+					notifyAll();
+				}
+			}
+			return false;
+		}
+		if(isGone(state)) {
+			retire(s);
+			return false;
+		}
+		return true;
+	}
+
+	// Must be called with the lock held.
+	private boolean detach(PooledSession s) {
+		if(s.poolState == PooledSession.RETIRED) return false;
+		s.poolState = PooledSession.RETIRED;
+		Profile p = profiles.get(s.getProfile());
+		if(p != null) p.sessions.remove(s);
+		notifyAll();
+		return true;
+	}
+
+	private void deleteLater(PooledSession s) {
+		try {
+			maintainer.execute(() -> delete(s));
+		} catch(RuntimeException e) {
+			// The pool is closed. The session is deleted on this thread instead.
+			delete(s);
+		}
+	}
+
+	// A session being shut down is not handed out again, since it becomes DEAD soon.
+	private static boolean isGone(int state) {
+		return state == Session.DEAD || state == Session.ERROR || state == Session.SHUTTING_DOWN;
+	}
+
+	private void delete(PooledSession s) {
+		try {
+			if(s.getSession() != null) client.deleteSession(s.getSession());
+		} catch(IOException e) {
+			// Left to the session timeout of livy server.
+		}
+	}
+
+	private void maintain() {
+		List<PooledSession> idle = new ArrayList<PooledSession>();
+		synchronized(this) {
+			if(closed) return;
+			for(Profile p : profiles.values()) {
+				for(PooledSession s : p.list(PooledSession.IDLE)) {
+					// Not handed out by checkout() while it is checked.
+					s.poolState = PooledSession.CHECKING;
+					idle.add(s);
+				}
+			}
+		}
+
+		// Health check of the idle sessions.
+		for(PooledSession s : idle) {
+			boolean dead;
+			try {
+				int state = client.getSession(s.getSession()).getState();
+				dead = isGone(state);
+				s.healthCheckFailures = 0;
+			} catch(IOException e) {
+				// A transient error is not taken as death.
+				dead = ++s.healthCheckFailures >= conf.getMaxHealthCheckFailures();
+			}
+			boolean retire = false;
+			synchronized(this) {
+				if(s.poolState != PooledSession.CHECKING) continue;
+				if(dead) {
+					retire = detach(s);
+					if(retire) replacedCount++;
+				} else {
+					s.poolState = PooledSession.IDLE;
+					notifyAll();
+				}
+			}
+			if(retire) deleteLater(s);
+		}
+
+		List<PooledSession> expired = new ArrayList<PooledSession>();
+		synchronized(this) {
+			if(closed) return;
+			long now = System.currentTimeMillis();
+			for(Profile p : profiles.values()) {
+				int warm = p.count(PooledSession.IDLE) + p.count(PooledSession.STARTING);
+				for(PooledSession s : p.list(PooledSession.IDLE)) {
+					if(warm <= conf.getMinIdle()) break;
+					if(now - s.lastUsed > conf.getIdleTimeout() && detach(s)) {
+						expired.add(s);
+						retiredCount++;
+						warm--;
+					}
+				}
+				fill(p);
+			}
+		}
+		for(PooledSession s : expired) delete(s);
+	}
+
+	/**
+	 * The sessions of one InteractiveJobParameters profile.
+	 */
+	private static class Profile {
+		final String key;
+		final InteractiveJobParameters req;
+		final List<PooledSession> sessions = new ArrayList<PooledSession>();
+		int waiting = 0;
+
+		Profile(String key, InteractiveJobParameters req) {
+			this.key = key;
+			this.req = req;
+		}
+
+		PooledSession takeIdle() {
+			// The most recently used session is handed out first so that the others can expire.
+			PooledSession found = null;
+			for(PooledSession s : sessions) {
+				if(s.poolState == PooledSession.IDLE && (found == null || s.lastUsed > found.lastUsed)) found = s;
+			}
+			return found;
+		}
+
+		int count(int state) {
+			int count = 0;
+			for(PooledSession s : sessions) if(s.poolState == state) count++;
+			return count;
+		}
+
+		List<PooledSession> list(int state) {
+			List<PooledSession> ret = new ArrayList<PooledSession>();
+			for(PooledSession s : sessions) if(s.poolState == state) ret.add(s);
+			return ret;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Randomizes the delay of another policy so that many monitors started at the same time
+ * do not hit livy server at the same moment.
+ */
+public class JitteredPollingPolicy implements PollingPolicy {
+
+	private final PollingPolicy base;
+	private final double jitter;
+
+	/**
+	 * @param base Policy to be randomized
+	 * @param jitter Ratio between 0 and 1. The delay is picked from [delay * (1 - jitter), delay * (1 + jitter)].
+	 */
+	public JitteredPollingPolicy(PollingPolicy base, double jitter) {
+		if(base == null) throw new IllegalArgumentException("base must not be null.");
+		if(jitter < 0 || jitter > 1) throw new IllegalArgumentException("jitter must be between 0 and 1.");
+		this.base = base;
+		this.jitter = jitter;
+	}
+
+	@Override
+	public long nextDelay(int attempt, long elapsed, double progress) {
+		long delay = base.nextDelay(attempt, elapsed, progress);
+		if(delay <= 0 || jitter == 0) return delay;
+		double factor = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+		return (long)(delay * factor);
+	}
+}
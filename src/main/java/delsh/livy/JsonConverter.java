@@ -17,25 +17,92 @@
 package delsh.livy;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 /**
  * Convert json string to Java object and vise versa.
+ * The mapper, readers and writers are built once and cached per type, so they are shared by
+ * all the clients. All the methods are thread-safe.
  */
 public class JsonConverter {
 
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+			.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false)
+			.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+			.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
+	private static final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+	private static final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+	static {
+		// Build the (de)serializers of the livy models up front.
+		writerFor(InteractiveJobParameters.class);
+		writerFor(BatchJobParameters.class);
+		readerFor(SessionInfo.class);
+		readerFor(StatementResults.class);
+		readerFor(Statements.class);
+		readerFor(LogPage.class);
+	}
+
+	/**
+	 * Gets the cached reader for the given type.
+	 * @param cls Java class
+	 * @return Reader
+	 */
+	public static ObjectReader readerFor(Class<?> cls) {
+		return readers.computeIfAbsent(cls, c -> MAPPER.readerFor(c));
+	}
+
+	/**
+	 * Gets the cached writer for the given type. The writer produces compact json.
+	 * @param cls Java class
+	 * @return Writer
+	 */
+	public static ObjectWriter writerFor(Class<?> cls) {
+		return writers.computeIfAbsent(cls, c -> MAPPER.writerFor(c));
+	}
+
 	/**
 	 * Convert json string to a Java object.
-     * @param Java class
-     * @param json string
-     * @return Java object
-     * @throws IOException
-     */
+	 * @param cls Java class
+	 * @param json string
+	 * @return Java object
+	 * @throws IOException
+	 */
 	public static <T> T toObject(Class<T> cls, String json) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return (T) mapper.readValue(json, cls);
+		return readerFor(cls).readValue(json);
+	}
+
+	/**
+	 * Convert json data read from the stream to a Java object. The stream is parsed directly
+	 * without building an intermediate string, and it is not closed.
+	 * @param cls Java class
+	 * @param in Stream of json data
+	 * @return Java object
+	 * @throws IOException
+	 */
+	public static <T> T toObject(Class<T> cls, InputStream in) throws IOException {
+		return readerFor(cls).readValue(in);
+	}
+
+	/**
+	 * Creates a streaming parser over the json data read from the stream. The stream is not closed.
+	 * @param in Stream of json data
+	 * @return Parser
+	 * @throws IOException
+	 */
+	public static JsonParser createParser(InputStream in) throws IOException {
+		return MAPPER.getFactory().createParser(in);
 	}
 
 	/**
@@ -45,10 +112,26 @@ public class JsonConverter {
 	 * @throws JsonProcessingException
 	 */
 	public static String toJson(Object obj) throws JsonProcessingException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
-		String json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(obj);
-		return json;
+		return writerFor(obj.getClass()).writeValueAsString(obj);
+	}
+
+	/**
+	 * Convert Java object to json encoded in UTF-8.
+	 * @param obj
+	 * @return json data
+	 * @throws JsonProcessingException
+	 */
+	public static byte[] toJsonBytes(Object obj) throws JsonProcessingException {
+		return writerFor(obj.getClass()).writeValueAsBytes(obj);
 	}
-}
 
+	/**
+	 * Write Java object to the stream as json encoded in UTF-8. The stream is not closed.
+	 * @param obj
+	 * @param out Output stream
+	 * @throws IOException
+	 */
+	public static void writeJson(Object obj, OutputStream out) throws IOException {
+		writerFor(obj.getClass()).writeValue(out, obj);
+	}
+}
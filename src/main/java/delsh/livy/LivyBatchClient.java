@@ -16,28 +16,21 @@
  */
 package delsh.livy;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.Authenticator;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * LivyBatchClient is a class that submits spark job to Livy server with batch mode.
  * See https://msdn.microsoft.com/en-us/library/mt613033.aspx
  */
-public class LivyBatchClient {
+public class LivyBatchClient extends AbstractLivyClient {
 	
-	private URL baseUri = null;
-	private BatchSession session = null;
-	private Authenticator auth = null;
+	// The session created last. Every method also has an overload that takes the session.
+	private volatile BatchSession session = null;
 
 	/**
 	 * Creates a LivyBatchClient with the given uri and auth info.
@@ -47,35 +40,43 @@ public class LivyBatchClient {
 	 * @throws MalformedURLException
 	 */
 	public LivyBatchClient(String uri, String user, String pwd) throws MalformedURLException {
-		baseUri = new URL(uri);
-		auth = new BasicAuthenticator(user, pwd);
+		this(uri, user, pwd, null);
+	}
+
+	/**
+	 * Creates a LivyBatchClient with the given uri, auth info and transport.
+	 * @param uri URI that is https://{cluster-endpoint}/livy
+	 * @param user Username for spark cluster 
+	 * @param pwd Password for spark cluster
+	 * @param transport Transport to be used for sending requests. The default transport is created if null.
+	 * @throws MalformedURLException
+	 */
+	public LivyBatchClient(String uri, String user, String pwd, LivyTransport transport) throws MalformedURLException {
+		this(uri, new BasicCredentialsProvider(user, pwd), transport);
+	}
+
+	/**
+	 * Creates a LivyBatchClient with the given uri, credentials provider and transport.
+	 * @param uri URI that is https://{cluster-endpoint}/livy
+	 * @param credentials Provider of the Authorization header, or null to send no credentials
+	 * @param transport Transport to be used for sending requests. The default transport is created if null.
+	 * @throws MalformedURLException
+	 */
+	public LivyBatchClient(String uri, CredentialsProvider credentials, LivyTransport transport) throws MalformedURLException {
+		super(uri, credentials, transport);
 	}
 	
 	/**
 	 * Gets all active interactive sessions
+	 * Use iterateBatches() or streamBatches() for typed sessions.
 	 * @return All active sessions in JSON format.
 	 * @throws IOException
 	 */
 	public String getActiveSessions() throws IOException {
-		BufferedReader br = null;
-		StringBuilder buf = new StringBuilder();
-		
-		HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/batches").openConnection();  
-		Authenticator.setDefault(auth);
-		con.setRequestMethod("GET");
-		con.setRequestProperty("Content-Type", "application/json");
-		br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));  
-		String line = null;
-		try {
-			while ((line = br.readLine()) != null) {
-				buf.append(line);
-				buf.append("\r\n");  
-			}
-		}finally{
-			if(br != null)	br.close();
+		try (LivyResponse resp = send("GET", "/batches", null)) {
+			checkResponse(resp);
+			return readString(resp);
 		}
-	
-		return buf.toString();
 	}
 
 	/**
@@ -87,54 +88,36 @@ public class LivyBatchClient {
  	 */
 	public Session createJob(BatchJobParameters req) throws IOException, LivyException {
 
-		String data = JsonConverter.toJson(req);
-		DataOutputStream os = null;
-		BufferedReader br = null;
-		int status = Session.RUNNING;
+		byte[] data = JsonConverter.toJsonBytes(req);
 
-		HttpURLConnection con = (HttpURLConnection)new URL(baseUri +  "/batches").openConnection();  
-		Authenticator.setDefault(auth);
-		con.setRequestMethod("POST");
-		con.setRequestProperty("Content-Type", "application/json");
-		con.setRequestProperty("Content-Type", "application/json");
-		con.setRequestProperty("X-Requested-By", "admin");
-		con.setDoOutput(true);
-		os = new DataOutputStream(con.getOutputStream());
- 
-        try {
-        	os.writeBytes(data);
-        	int resp = con.getResponseCode();
-        	if(resp != 200 && resp != 201) {
-        		throw new LivyException("Invalid HTTP response code is returned. " + resp);
-        	}
-            
-        	StringBuilder sb = new StringBuilder();
-        	String line = "";
-        	br = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        	while ((line = br.readLine()) != null) {
-        		sb.append(line);
-        		sb.append("\r\n");
-        	}
-        	String buf = sb.toString();
-			ObjectMapper mapper = new ObjectMapper();
-			JsonNode root = mapper.readTree(buf);
+		BatchSession s;
+		try (LivyResponse resp = send("POST", "/batches", data)) {
+			int code = resp.getStatusCode();
+			if(code != 200 && code != 201) {
+				throw new LivyException("Invalid HTTP response code is returned. " + code);
+			}
+			SessionInfo info = readObject(resp, SessionInfo.class);
+			s = new BatchSession(info.id);
+			s.setState(Session.toState(info.state));
+		}
 
-        	session =  new BatchSession(Integer.valueOf(root.get("id").asText()));
-        	String state = root.get("state").asText();
-        	
-			if(state.equals("running") == true) status = Session.RUNNING;
-        	else if(state.equals("error") == true) status = Session.ERROR;
-        	else if(state.equals("success") == true) status = Session.SUCCESS;
-        	else if(state.equals("starting") == true) status = Session.STARTING;
-        	else if(state.equals("idle") == true) status = Session.IDLE;
-        	else status = Session.ERROR;
-        	session.setState(status);
-        } finally {
-        	if(br != null) br.close();
-        	if(os != null) os.close();
-        }
+		session = s;
+		return s;
+	}
 
-		return session;
+	/**
+	 * Creates a new batch job with a listener for receiving the session status.
+	 * @param req BatchJobParameters object
+	 * @param policy Policy that decides the interval time for monitoring the status
+	 * @param listener A listener to receive the status
+	 * @return Session object that contains the session id returned from livy server
+	 * @throws IOException
+	 * @throws LivyException
+	 */
+	public Session createJob(BatchJobParameters req, PollingPolicy policy, SessionEventListener listener) throws IOException, LivyException {
+		BatchSession s = (BatchSession)createJob(req);
+		getPoller().watchSession(pollKey(s.getId()), new BatchTarget(s), policy, listener);
+		return s;
 	}
 
 	/**
@@ -151,86 +134,115 @@ public class LivyBatchClient {
 	 * @throws IOException
 	 */
 	public BatchSession getSession() throws IOException {
-		int state = Session.STARTING;
-		
-		if(session.getState() == Session.DEAD) return session;
-		
-		HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/batches/" + session.getId()).openConnection();  
-		Authenticator.setDefault(auth);
-		con.setRequestMethod("GET");
-		con.setRequestProperty("Content-Type", "application/json");
-		          
-	    StringBuilder sb = new StringBuilder();
-	    String line = null;
-	    try (BufferedReader br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"))) {
-	    	while ((line = br.readLine()) != null) {
-	    		sb.append(line);
-	    		sb.append("\r\n");
-	    	}
-	    } catch(FileNotFoundException ex) {
-	    	throw new IOException(ex);
-	    }
+		return getSession(session);
+	}
 
-	    String buf = sb.toString();
-		ObjectMapper mapper = new ObjectMapper();
-		JsonNode root = mapper.readTree(buf);
-		String st = root.get("state").asText();
+	/**
+	 * Gets the state of the given batch session.
+	 * @param s Batch session
+	 * @return Session's status
+	 * @throws IOException
+	 */
+	public BatchSession getSession(BatchSession s) throws IOException {
+		if(s.getState() == Session.DEAD) return s;
+		
+		SessionInfo info = null;
+		try (LivyResponse resp = send("GET", "/batches/" + s.getId(), null)) {
+			checkResponse(resp);
+			info = readObject(resp, SessionInfo.class);
+		}
 
-    	if(st != null) {
-    		if(st.equals("running") == true) state = Session.RUNNING;
-    		else if(st.equals("error") == true) state = Session.ERROR;
-    		else if(st.equals("success") == true) state = Session.SUCCESS;
-    		else if(st.equals("starting") == true) state = Session.STARTING;
-    		else if(st.equals("idle") == true) state = Session.IDLE;
-    		else state = Session.ERROR;
-    		session.setState(state);
-    	}else{
-    		session.setState(Session.ERROR);
-    	}
-    	if(root.get("appId") != null) session.setAppId(root.get("appId").asText());
-    	if(root.get("appInfo") != null) session.setAppInfo(root.get("appInfo").asText());
-    	if(root.get("log") != null) session.setLog(root.get("log").asText());
+		info.applyTo(s);
 	
-		return session;
+		return s;
 	}
 	
+	/**
+	 * Iterates over the batch sessions on livy server.
+	 * The sessions are requested page by page with from/size while the iterator is consumed.
+	 * @param filter Filter of the sessions, or null for all sessions
+	 * @return Iterator of the sessions. An IOException is thrown as UncheckedIOException.
+	 */
+	public Iterator<BatchSession> iterateBatches(SessionFilter filter) {
+		return iterateBatches(filter, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Iterates over the batch sessions on livy server.
+	 * @param filter Filter of the sessions, or null for all sessions
+	 * @param pageSize Number of sessions requested per page
+	 * @return Iterator of the sessions. An IOException is thrown as UncheckedIOException.
+	 */
+	public Iterator<BatchSession> iterateBatches(SessionFilter filter, int pageSize) {
+		return iterate("/batches", filter, pageSize, info -> {
+			BatchSession s = new BatchSession(info.id);
+			info.applyTo(s);
+			return s;
+		});
+	}
+
+	/**
+	 * Streams the batch sessions on livy server. See iterateBatches().
+	 * @param filter Filter of the sessions, or null for all sessions
+	 * @return Sequential stream of the sessions
+	 */
+	public Stream<BatchSession> streamBatches(SessionFilter filter) {
+		return stream(iterateBatches(filter));
+	}
+
 	/**
 	 * Obtains full logs for the given batch id.
+	 * Use tailLog() for large logs, that fetches only the new lines.
 	 * @return log data
 	 * @throws IOException
 	 */
 	public String getFullLog() throws IOException {
-		BufferedReader br = null;
-		
-		if(session.getState() == Session.DEAD) return null;
+		return getFullLog(session);
+	}
+
+	/**
+	 * Obtains full logs of the given batch session.
+	 * @param s Batch session
+	 * @return log data
+	 * @throws IOException
+	 */
+	public String getFullLog(BatchSession s) throws IOException {
+		if(s.getState() == Session.DEAD) return null;
 		
-		HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/batches/" + session.getId() + "/log").openConnection();  
-		Authenticator.setDefault(auth);
-		con.setRequestMethod("GET");
-		con.setRequestProperty("Content-Type", "application/json");
+		try (LivyResponse resp = send("GET", "/batches/" + s.getId() + "/log", null)) {
+			checkResponse(resp);
+			return readString(resp);
+		}
+	}
 
-	    StringBuilder sb = new StringBuilder();
-	    String line = null;
-	    try {
-	    	br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));
-	    	while ((line = br.readLine()) != null) {
-	    		sb.append(line);
-	    		sb.append("\r\n");
-	    	}
-	    } catch(FileNotFoundException ex) {
-	    	throw new IOException(ex);
-	    } finally {
-	    	if(br != null) br.close();
-	    }
+	/**
+	 * Creates a tailer of the log of the current batch session.
+	 * @param sink Sink that receives the log lines
+	 * @return Log tailer
+	 */
+	public LogTailer tailLog(LogSink sink) {
+		return tailLog(session, sink);
+	}
 
-	    String buf = sb.toString();
-		ObjectMapper mapper = new ObjectMapper();
-		JsonNode root = mapper.readTree(buf);
-	    String from = root.get("from").asText();
-	    String total = root.get("total").asText();
-    	String log = root.get("log").asText();
-	
-		return buf;
+	/**
+	 * Creates a tailer of the log of the given batch session.
+	 * Call poll() on the tailer to fetch the new lines, or follow() to fetch them until the batch finishes.
+	 * @param s Batch session
+	 * @param sink Sink that receives the log lines
+	 * @return Log tailer
+	 */
+	public LogTailer tailLog(BatchSession s, LogSink sink) {
+		return new LogTailer(new LogTailer.Source() {
+			@Override
+			public LogPage fetch(int from, int size) throws IOException {
+				return fetchLog("/batches/" + s.getId(), from, size);
+			}
+
+			@Override
+			public boolean isFinished() throws IOException {
+				return LivyBatchClient.isFinished(getSession(s).getState());
+			}
+		}, sink);
 	}
 	
 	/**
@@ -238,24 +250,82 @@ public class LivyBatchClient {
 	 * @throws IOException
 	 */
 	public void deleteSession() throws IOException {
-		BufferedReader br = null;
-		
-		try {
-			HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/batches/" + session.getId()).openConnection();  
-			Authenticator.setDefault(auth);
-	    	con.setRequestMethod("DELETE");
-	    	con.setRequestProperty("Content-Type", "application/json");
-	    	con.setRequestProperty("X-Requested-By", "admin");
-	    	br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));  
-	    	String line = null;
-	    	StringBuilder buf = new StringBuilder();
-	    	while ((line = br.readLine()) != null) {
-	    		buf.append(line);
-	    		buf.append("\r\n");  
-	    	}
-	    } finally {
-	    	if(br != null) br.close();
-	    	session.reset();
-	    }
+		deleteSession(session);
+	}
+
+	/**
+	 * Deletes the given batch session
+	 * @param s Batch session
+	 * @throws IOException
+	 */
+	public void deleteSession(BatchSession s) throws IOException {
+		int id = s.getId();
+		try (LivyResponse resp = send("DELETE", "/batches/" + id, null)) {
+			checkResponse(resp);
+		} finally {
+			cancelPolling(pollKey(id));
+			s.reset();
+		}
+	}
+
+	/**
+	 * Updates the batch session for BatchStatusTracker.
+	 * @param s Batch session
+	 * @return false if livy server no longer knows the batch
+	 * @throws IOException
+	 */
+	boolean refreshSession(BatchSession s) throws IOException {
+		SessionInfo info = null;
+		try (LivyResponse resp = send("GET", "/batches/" + s.getId(), null)) {
+			if(resp.getStatusCode() == 404) return false;
+			checkResponse(resp);
+			info = readObject(resp, SessionInfo.class);
+		}
+		info.applyTo(s);
+		return true;
+	}
+
+	/**
+	 * Checks if the batch state is final.
+	 * @param state Session state
+	 * @return true for SUCCESS, DEAD, ERROR and GONE
+	 */
+	static boolean isFinished(int state) {
+		return state == Session.SUCCESS || state == Session.DEAD || state == Session.ERROR || state == Session.GONE;
+	}
+
+	private String pollKey(int sessionId) {
+		return baseUri + "/batches/" + sessionId;
+	}
+
+	/**
+	 * Polls a batch session for LivyPoller.
+	 */
+	private class BatchTarget implements LivyPoller.Target {
+		private final BatchSession s;
+
+		BatchTarget(BatchSession s) {
+			this.s = s;
+		}
+
+		@Override
+		public Session fetchSession() throws IOException {
+			return getSession(s);
+		}
+
+		@Override
+		public List<Statements> fetchStatements(int from, int size) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Statements fetchStatement(int id) throws IOException {
+			throw new IOException("A batch session has no statements.");
+		}
+
+		@Override
+		public StatementResult complete(Statements s, String statement) {
+			return null;
+		}
 	}
 }
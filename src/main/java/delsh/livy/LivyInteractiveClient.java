@@ -16,22 +16,16 @@
  */
 package delsh.livy;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.Authenticator;
-import java.net.HttpURLConnection;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -41,13 +35,12 @@ import org.json.simple.JSONValue;
  *	LivyInteractiveClient is a class that submits remote job to Livy server with interactive mode.
  *	See https://msdn.microsoft.com/en-us/library/azure/mt613029.aspx for more detail.
  */
-public class LivyInteractiveClient {
-	private URL baseUri = null;
-	private InteractiveSession session = null;
-	private Authenticator auth = null;
-	private ArrayList<StatementResult> array = null;
-	private ExecutorService sessionThd = null;
-	private ExecutorService stmtThd = null;
+public class LivyInteractiveClient extends AbstractLivyClient {
+	// The session used by the methods that do not take a session.
+	private volatile InteractiveSession session = null;
+	private final ConcurrentHashMap<Integer, InteractiveSession> sessions = new ConcurrentHashMap<Integer, InteractiveSession>();
+	private volatile StatementCache cache = null;
+	private volatile int outputSpillThreshold = OutputBuffer.DEFAULT_SPILL_THRESHOLD;
 	
 	/**
 	 * Creates a LivyInteractiveClient with the given uri and auth info.
@@ -57,85 +50,68 @@ public class LivyInteractiveClient {
 	 * @throws MalformedURLException
 	 */
 	public LivyInteractiveClient(String uri, String user, String pwd) throws MalformedURLException {
-		baseUri = new URL(uri);
-		auth = new BasicAuthenticator(user, pwd);
-		array = new ArrayList<StatementResult>();
+		this(uri, user, pwd, null);
+	}
+
+	/**
+	 * Creates a LivyInteractiveClient with the given uri, auth info and transport.
+	 * @param uri URI that is https://{cluster-endpoint}/livy
+	 * @param user Username for spark cluster 
+	 * @param pwd Password for spark cluster
+	 * @param transport Transport to be used for sending requests. The default transport is created if null.
+	 * @throws MalformedURLException
+	 */
+	public LivyInteractiveClient(String uri, String user, String pwd, LivyTransport transport) throws MalformedURLException {
+		this(uri, new BasicCredentialsProvider(user, pwd), transport);
+	}
+
+	/**
+	 * Creates a LivyInteractiveClient with the given uri, credentials provider and transport.
+	 * @param uri URI that is https://{cluster-endpoint}/livy
+	 * @param credentials Provider of the Authorization header, or null to send no credentials
+	 * @param transport Transport to be used for sending requests. The default transport is created if null.
+	 * @throws MalformedURLException
+	 */
+	public LivyInteractiveClient(String uri, CredentialsProvider credentials, LivyTransport transport) throws MalformedURLException {
+		super(uri, credentials, transport);
 	}
 		
 	/**
 	 * Gets all active interactive sessions
+	 * Use iterateSessions() or streamSessions() for typed sessions.
 	 * @return All active sessions in JSON format.
 	 * @throws IOException
 	 */
 	public String getActiveSessions() throws IOException {
-		BufferedReader br = null;
-		StringBuilder buf = new StringBuilder();
-	
-	    HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/sessions").openConnection();  
-	    Authenticator.setDefault(auth);
-	    con.setRequestMethod("GET");
-	    con.setRequestProperty("Content-Type", "application/json");
-        con.setRequestProperty("X-Requested-By", "admin");
-	    
-	    try {
-	    	br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));  
-	    	String line = null;
-	    	while ((line = br.readLine()) != null) {
-	    		buf.append(line);
-	    		buf.append("\r\n");  
-	    	}
-	    } finally {
-	    	if(br != null)	br.close();
-	    }
-	
-		return buf.toString();
+		try (LivyResponse resp = send("GET", "/sessions", null)) {
+			checkResponse(resp);
+			return readString(resp);
+		}
 	}
 	
 	/**
-	 * Creates a new interactive session
+	 * Creates a new interactive session. The session becomes the current session of this client.
 	 * @param req InteractiveJobParameters object
 	 * @return Session object that contains the session id returned from livy server
 	 * @throws IOException
 	 * @throws LivyException
 	 */
-	public Session createSession(InteractiveJobParameters req) throws IOException, LivyException {
-		String data = JsonConverter.toJson(req);
-        DataOutputStream os = null;
-        BufferedReader br = null;
-
-        HttpURLConnection con = (HttpURLConnection)new URL(baseUri +  "/sessions").openConnection();  
-        Authenticator.setDefault(auth);
-        con.setRequestMethod("POST");
-        con.setRequestProperty("Content-Type", "application/json");
-        con.setRequestProperty("Content-Length", String.valueOf(data.length()));
-        con.setRequestProperty("X-Requested-By", "admin"); // Required from HDI3.6 (Spark2.3)
-        con.setDoOutput(true);
-        	
-        os = new DataOutputStream(con.getOutputStream());
-        try {
-        	os.writeBytes(data);
-        	int resp = con.getResponseCode();
-        	if(resp != 200 && resp != 201) {
-        		throw new LivyException("Invalid HTTP response code is returned. " + resp);
-        	}
-        	StringBuilder sb = new StringBuilder();
-        	String line = "";
-        	br = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        	while ((line = br.readLine()) != null) {
-        		sb.append(line);
-        		sb.append("\r\n");
-        	}
-        	String buf = sb.toString();
-			ObjectMapper mapper = new ObjectMapper();
-			JsonNode root = mapper.readTree(buf);
-        	session =  new InteractiveSession(Integer.valueOf(root.get("id").asText()));
-System.out.println("ID: " + session.getId());
-        } finally {
-        	if(br != null) br.close();
-        	if(os != null) os.close();
-        }
+	public InteractiveSession createSession(InteractiveJobParameters req) throws IOException, LivyException {
+		byte[] data = JsonConverter.toJsonBytes(req);
+		InteractiveSession s;
 
-		return session;
+		try (LivyResponse resp = send("POST", "/sessions", data)) {
+			int code = resp.getStatusCode();
+			if(code != 200 && code != 201) {
+				throw new LivyException("Invalid HTTP response code is returned. " + code);
+			}
+			SessionInfo info = readObject(resp, SessionInfo.class);
+			s = new InteractiveSession(info.id);
+		}
+
+		sessions.put(s.getId(), s);
+		session = s;
+		return s;
 	}
 	
 	/**
@@ -147,31 +123,43 @@ System.out.println("ID: " + session.getId());
 	 * @throws IOException
 	 * @throws LivyException
 	 */
-	public Session createSession(InteractiveJobParameters req, final int interval, final SessionEventListener listener) throws IOException, LivyException {
-		createSession(req);
-	
-		sessionThd = Executors.newSingleThreadExecutor();
-		sessionThd.execute(new Runnable() {
-			@Override
-			public void run() {
-				while(true) {
-					try {
-						boolean ret = listener.updateStatus(getSession());
-						if(ret == false) {
-							return;
-						}
-                		Thread.sleep(interval);
-					} catch (IOException e1) {
-						e1.printStackTrace();
-						return;
-                	} catch (InterruptedException e) {
-                		e.printStackTrace();
-                	}
-                }
-			}
-		});
- 
-        return session;
+	public InteractiveSession createSession(InteractiveJobParameters req, final int interval, final SessionEventListener listener) throws IOException, LivyException {
+		return createSession(req, new FixedPollingPolicy(interval), listener);
+	}
+
+	/**
+	 * Creates a new interactive session with a listener for receiving a session status.
+	 * @param req InteractiveJobParameters object
+	 * @param policy Policy that decides the interval time for monitoring the status
+	 * @param listener A listener to receive the status
+	 * @return Session object that contains the session id returned from livy server
+	 * @throws IOException
+	 * @throws LivyException
+	 */
+	public InteractiveSession createSession(InteractiveJobParameters req, final PollingPolicy policy, final SessionEventListener listener) throws IOException, LivyException {
+		InteractiveSession s = createSession(req);
+		getPoller().watchSession(pollKey(s.getId()), new SessionTarget(s), policy, listener);
+		return s;
+	}
+
+	/**
+	 * Registers an existing session on livy server to this client, so that it can be used
+	 * like a session created by this client.
+	 * @param id Session id
+	 * @return Session object
+	 * @throws IOException
+	 */
+	public InteractiveSession attachSession(int id) throws IOException {
+		InteractiveSession s = sessions.computeIfAbsent(id, k -> new InteractiveSession(k));
+		return getSession(s);
+	}
+
+	/**
+	 * Gets the sessions created or attached by this client and not deleted yet.
+	 * @return Sessions
+	 */
+	public Collection<InteractiveSession> getSessions() {
+		return Collections.unmodifiableCollection(sessions.values());
 	}
 
 	/**
@@ -188,96 +176,149 @@ System.out.println("ID: " + session.getId());
 	 * @throws IOException
 	 */
 	public InteractiveSession getSession() throws IOException {
-		BufferedReader br = null;
-		int status = Session.STARTING;
-		
-		if(session.getState() == Session.DEAD) return session;
+		return getSession(current());
+	}
+
+	/**
+	 * Gets the latest status of the given session.
+	 * @param s Session
+	 * @return The given session updated with the latest status
+	 * @throws IOException
+	 */
+	public InteractiveSession getSession(InteractiveSession s) throws IOException {
+		if(s.getState() == Session.DEAD) return s;
 		
-		HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/sessions/" + session.getId()).openConnection();  
-		Authenticator.setDefault(auth);
-		con.setRequestMethod("GET");
-		con.setRequestProperty("Content-Type", "application/json");
-        con.setRequestProperty("X-Requested-By", "admin");
-
-	    StringBuilder sb = new StringBuilder();
-	    String line = null;
-	    try {
-	    	br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));
-	    	while ((line = br.readLine()) != null) {
-	    		sb.append(line);
-	    		sb.append("\r\n");
-	    	}
-	    } catch(FileNotFoundException ex) {
-	    	throw new IOException(ex);
-	    } finally {
-	    	if(br != null) br.close();
-	    }
-
-	    String buf = sb.toString();
-		ObjectMapper mapper = new ObjectMapper();
-		JsonNode root = mapper.readTree(buf);
-    	String state = root.get("state").asText();
-    	if(state != null) {
-    		if(state.equals("starting") == true) status = Session.STARTING;
-    		else if(state.equals("idle") == true) status = Session.IDLE;
-    		else if(state.equals("dead") == true) status = Session.DEAD;
-    		else if(state.equals("error") == true) status = Session.ERROR;
-    		else status = Session.ERROR;
-    		session.setState(status);
-    	}else{
-    		session.setState(Session.ERROR);
-    	}
-    	if(root.get("appId") != null) session.setAppId(root.get("appId").asText());
-    	if(root.get("appInfo") != null) session.setAppInfo(root.get("appInfo").asText());
-    	if(root.get("log") != null) session.setLog(root.get("log").asText());
-    	if(root.get("proxyUser") != null) session.setProxyUser(root.get("proxyUser").asText());
-    	if(root.get("kind") != null) {
-			SessionKind tmp = SessionKind.getEnum(root.get("kind").asText());
-			session.setKind(tmp);
-			//session.setKind(SessionKind.getEnum(root.get("ind").asText()));
+		SessionInfo info = null;
+		try (LivyResponse resp = send("GET", "/sessions/" + s.getId(), null)) {
+			checkResponse(resp);
+			info = readObject(resp, SessionInfo.class);
 		}
-    	
-		return session;
+
+		applyTo(info, s);
+		return s;
+	}
+
+	/**
+	 * Iterates over the interactive sessions on livy server.
+	 * The sessions are requested page by page with from/size while the iterator is consumed.
+	 * The returned sessions are not registered to this client; use attachSession() to work with one of them.
+	 * @param filter Filter of the sessions, or null for all sessions
+	 * @return Iterator of the sessions. An IOException is thrown as UncheckedIOException.
+	 */
+	public Iterator<InteractiveSession> iterateSessions(SessionFilter filter) {
+		return iterateSessions(filter, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Iterates over the interactive sessions on livy server.
+	 * @param filter Filter of the sessions, or null for all sessions
+	 * @param pageSize Number of sessions requested per page
+	 * @return Iterator of the sessions. An IOException is thrown as UncheckedIOException.
+	 */
+	public Iterator<InteractiveSession> iterateSessions(SessionFilter filter, int pageSize) {
+		return iterate("/sessions", filter, pageSize, info -> {
+			InteractiveSession s = new InteractiveSession(info.id);
+			applyTo(info, s);
+			return s;
+		});
+	}
+
+	/**
+	 * Streams the interactive sessions on livy server. See iterateSessions().
+	 * @param filter Filter of the sessions, or null for all sessions
+	 * @return Sequential stream of the sessions
+	 */
+	public Stream<InteractiveSession> streamSessions(SessionFilter filter) {
+		return stream(iterateSessions(filter));
+	}
+
+	private static void applyTo(SessionInfo info, InteractiveSession s) {
+		info.applyTo(s);
+		if(info.proxyUser != null) s.setProxyUser(info.proxyUser);
+		SessionKind kind = (info.kind != null) ? SessionKind.getEnum(info.kind) : null;
+		if(kind != null) s.setKind(kind);
+	}
+
+	/**
+	 * Creates a tailer of the driver log of the given session.
+	 * Call poll() on the tailer to fetch the new lines, or follow() to fetch them until the session
+	 * is dead or deleted by this client. Use LogBuffer as the sink to keep the latest lines in memory.
+	 * @param s Session
+	 * @param sink Sink that receives the log lines
+	 * @return Log tailer
+	 */
+	public LogTailer tailLog(InteractiveSession s, LogSink sink) {
+		return new LogTailer(new LogTailer.Source() {
+			@Override
+			public LogPage fetch(int from, int size) throws IOException {
+				return fetchLog("/sessions/" + s.getId(), from, size);
+			}
+
+			@Override
+			public boolean isFinished() throws IOException {
+				if(sessions.get(s.getId()) != s) return true;
+				int state = getSession(s).getState();
+				return state == Session.DEAD || state == Session.ERROR || state == Session.SUCCESS;
+			}
+		}, sink);
 	}
 
 	/**
 	 * Submits the statement(s) to livy server.
 	 * @param statement Set the statement(s). Use semicolon to send the multiple statements.
+	 * @return Statement id assigned by livy server
 	 * @throws LivyException
 	 * @throws IOException
 	 */
-	public void submitStatement(final String statement) throws LivyException, IOException {
-
-        String data = "{\"code\" : \"" + statement + "\"}";
-        DataOutputStream os = null;
-        BufferedReader br = null;
- 
-		HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/sessions/" + session.getId() + "/statements").openConnection();  
-		Authenticator.setDefault(auth);
-	    con.setRequestMethod("POST");
-	    con.setRequestProperty("Content-Type", "application/json");
-	    con.setRequestProperty("Content-Length", String.valueOf(data.length()));
-        con.setRequestProperty("X-Requested-By", "admin");
-	    con.setDoOutput(true);
-        os = new DataOutputStream(con.getOutputStream());
-        try {
-        	os.writeBytes(data);
-        	int resp = con.getResponseCode();
-        	if(resp != 200 && resp != 201) {
-        		throw new LivyException("Invalid HTTP response code is returned. " + resp);
-        	}
-            
-        	StringBuilder sb = new StringBuilder();
-        	String line = "";
-        	br = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        	while ((line = br.readLine()) != null) {
-        		sb.append(line);
-        		sb.append("\r\n");      
-        	}
-        } finally {
-        	if(br != null) br.close();
-        	if(os != null) os.close();
-        }
+	public int submitStatement(final String statement) throws LivyException, IOException {
+		return submitStatement(current(), statement);
+	}
+
+	/**
+	 * Submits the statement(s) to the given session. The code is JSON-escaped by the client.
+	 * @param s Session
+	 * @param statement Set the statement(s). Use semicolon to send the multiple statements.
+	 * @return Statement id assigned by livy server
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitStatement(InteractiveSession s, final String statement) throws LivyException, IOException {
+		return submitStatement(s, StatementBody.of(statement, null));
+	}
+
+	/**
+	 * Submits a statement of the given kind to the given session. A session of SessionKind.SHARED
+	 * runs statements of any kind, so one session can serve Scala, Python, R and SQL code.
+	 * This requires Livy 0.5 or later. The code is JSON-escaped by the client.
+	 * @param s Session
+	 * @param statement Statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @return Statement id assigned by livy server
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitStatement(InteractiveSession s, final String statement, final SessionKind kind) throws LivyException, IOException {
+		return submitStatement(s, StatementBody.of(statement, kind));
+	}
+
+	/**
+	 * Submits a statement whose code is streamed from a string, a reader or a file.
+	 * The code is escaped and encoded while it is written to the connection, so a large script is sent
+	 * without building a copy of the request in memory.
+	 * @param s Session
+	 * @param body Statement body
+	 * @return Statement id assigned by livy server
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitStatement(InteractiveSession s, StatementBody body) throws LivyException, IOException {
+		try (LivyResponse resp = sendStreaming("POST", "/sessions/" + s.getId() + "/statements", body)) {
+			int code = resp.getStatusCode();
+			if(code != 200 && code != 201) {
+				throw new LivyException("Invalid HTTP response code is returned. " + code);
+			}
+			return readObject(resp, Statements.class).id;
+		}
 	}
 	
 	/**
@@ -285,77 +326,327 @@ System.out.println("ID: " + session.getId());
 	 * @param statement Set the statement(s). Use semicolon to send the multiple statements.
 	 * @param interval Interval time expressed in milliseconds for monitoring the status
 	 * @param listener A listener object to get the statement's result.
+	 * @return Statement id assigned by livy server
 	 * @throws LivyException
 	 * @throws IOException
 	 */
-	public void submitStatement(final String statement, final int interval, final StatementResultListener listener) throws LivyException, IOException {
-		submitStatement(statement);
-	
-		stmtThd = Executors.newSingleThreadExecutor();
-		stmtThd.execute(new Runnable() {
+	public int submitStatement(final String statement, final int interval, final StatementResultListener listener) throws LivyException, IOException {
+		return submitStatement(current(), statement, new FixedPollingPolicy(interval), listener);
+	}
+
+	/**
+	 * Submits a statement to spark cluster
+	 * @param statement Set the statement(s). Use semicolon to send the multiple statements.
+	 * @param policy Policy that decides the interval time for monitoring the status
+	 * @param listener A listener object to get the statement's result.
+	 * @return Statement id assigned by livy server
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitStatement(final String statement, final PollingPolicy policy, final StatementResultListener listener) throws LivyException, IOException {
+		return submitStatement(current(), statement, policy, listener);
+	}
+
+	/**
+	 * Submits a statement to the given session
+	 * @param s Session
+	 * @param statement Set the statement(s). Use semicolon to send the multiple statements.
+	 * @param policy Policy that decides the interval time for monitoring the status
+	 * @param listener A listener object to get the statement's result.
+	 * @return Statement id assigned by livy server
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitStatement(final InteractiveSession s, final String statement, final PollingPolicy policy, final StatementResultListener listener) throws LivyException, IOException {
+		final int stmtId = submitStatement(s, statement);
+		watchStatement(s, stmtId, statement, null, policy, listener);
+		return stmtId;
+	}
+
+	/**
+	 * Submits a statement of the given kind to the given session
+	 * @param s Session
+	 * @param statement Statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @param policy Policy that decides the interval time for monitoring the status
+	 * @param listener A listener object to get the statement's result.
+	 * @return Statement id assigned by livy server
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitStatement(final InteractiveSession s, final String statement, final SessionKind kind, final PollingPolicy policy, final StatementResultListener listener) throws LivyException, IOException {
+		final int stmtId = submitStatement(s, statement, kind);
+		watchStatement(s, stmtId, statement, kind, policy, listener);
+		return stmtId;
+	}
+
+	/**
+	 * Submits a statement whose code is streamed from a string, a reader or a file, and monitors it.
+	 * The result of a body from a reader or a file has no statement code.
+	 * @param s Session
+	 * @param body Statement body
+	 * @param policy Policy that decides the interval time for monitoring the status
+	 * @param listener A listener object to get the statement's result.
+	 * @return Statement id assigned by livy server
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitStatement(final InteractiveSession s, final StatementBody body, final PollingPolicy policy, final StatementResultListener listener) throws LivyException, IOException {
+		final int stmtId = submitStatement(s, body);
+		watchStatement(s, stmtId, body.getCode(), body.getKind(), policy, listener);
+		return stmtId;
+	}
+
+	private void watchStatement(final InteractiveSession s, int stmtId, String statement, final SessionKind kind, PollingPolicy policy, final StatementResultListener listener) {
+		getPoller().watchStatement(pollKey(s.getId()), new SessionTarget(s), stmtId, statement, policy, new StatementResultListener() {
 			@Override
-			public void run(){
-
-            	int current = array.size();
-
-				ObjectMapper mapper = new ObjectMapper();
-				JsonNode root = null;
-
-                while(true) {
-					String buf;
-					try {
-						buf = getStatementResult();
-//					  	System.out.print("BUF: " + buf);
-					  	root = mapper.readTree(buf);
-						int total = Integer.valueOf(root.get("total_statements").asText());
-						StatementResults ret = JsonConverter.toObject(StatementResults.class, buf);
-//						System.out.println("RET: " + ret.total_statements);
-						List<Statements> stt = ret.statements;
-						stt.forEach(s -> {
-							if(s.id != current) return;
-					  		if(s.output == null) return;
-							if(!s.state.equals(StatementResult.STATE_AVAILABLE)) return;
-
-							StatementResult sr;
-							if(s.output.status.equals("error")) {
-/*								System.out.println("ID: " + s.id );
-								System.out.println("STATE: " + s.state);
-								System.out.println("STATUS: " + s.output.status);
-								System.out.println("EXECUTION_COUNT :" + s.output.execution_count);
-*/
-								sr = new StatementResult(s.id, s.state, s.output.execution_count, s.output.status, "", statement);
-							} else {
-/*								System.out.println("ID: " + s.id );
-								System.out.println("STATE: " + s.state);
-								System.out.println("STATUS: " + s.output.status);
-								System.out.println("EXECUTION_COUNT :" + s.output.execution_count);
-								System.out.println("Text: " + s.output.data.text);
-*/
-								sr = new StatementResult(s.id, s.state, s.output.execution_count, s.output.status, s.output.data.text, statement);
-							}
-							array.add(sr);
-							listener.update(sr);
-						});
-
-              	  		if(array.size() == current + 1) {
-              		  		break;
-              	  		}
-              	  } catch (IOException e1) {
-              		  e1.printStackTrace();
-              		  return;
-              	  }
-
-              	  try {
-              		  Thread.sleep(interval);
-              	  } catch (InterruptedException e) {
-              		  e.printStackTrace();
-              	  }
-
-                }
-           }
-        });
+			public void update(StatementResult result) {
+				result.setKind(kind);
+				s.addResult(result);
+				listener.update(result);
+			}
+
+			@Override
+			public void onError(Exception cause) {
+				listener.onError(cause);
+			}
+		});
 	}
 	
+	/**
+	 * Sets the cache used by submitCachedStatement().
+	 * @param c Statement cache, or null to disable caching
+	 */
+	public void setStatementCache(StatementCache c) {
+		cache = c;
+	}
+
+	public StatementCache getStatementCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the number of characters above which a statement output is kept in a temporary file
+	 * instead of the heap. See StatementResult.getOutputReader().
+	 * @param threshold Number of characters. 0 or less keeps all the outputs in the heap.
+	 */
+	public void setOutputSpillThreshold(int threshold) {
+		outputSpillThreshold = threshold;
+	}
+
+	public int getOutputSpillThreshold() {
+		return outputSpillThreshold;
+	}
+
+	/**
+	 * Submits a deterministic, read-only statement through the statement cache.
+	 * On a hit, the listener is called at once with the cached result and nothing is sent to livy server.
+	 * On a miss, the statement is submitted and its successful result is stored in the cache.
+	 * Without a cache set, this is the same as submitStatement().
+	 * @param s Session
+	 * @param scope Scope of the cached result, e.g. the name and the version of the data. null for no scope.
+	 * @param statement Statement code
+	 * @param policy Policy that decides the interval time for monitoring the statement
+	 * @param listener A listener to receive the result
+	 * @return Statement id, or -1 if the result was found in the cache
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitCachedStatement(final InteractiveSession s, final String scope, final String statement, final PollingPolicy policy, final StatementResultListener listener) throws LivyException, IOException {
+		return submitCachedStatement(s, scope, statement, null, policy, listener);
+	}
+
+	/**
+	 * Submits a deterministic, read-only statement of the given kind through the statement cache.
+	 * The result is cached under the kind the statement runs with, so the same code of another kind is a miss.
+	 * @param s Session
+	 * @param scope Scope of the cached result, e.g. the name and the version of the data. null for no scope.
+	 * @param statement Statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @param policy Policy that decides the interval time for monitoring the statement
+	 * @param listener A listener to receive the result
+	 * @return Statement id, or -1 if the result was found in the cache
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public int submitCachedStatement(final InteractiveSession s, final String scope, final String statement, final SessionKind kind, final PollingPolicy policy, final StatementResultListener listener) throws LivyException, IOException {
+		final StatementCache c = cache;
+		if(c == null) return submitStatement(s, statement, kind, policy, listener);
+
+		final SessionKind runKind = (kind != null) ? kind : s.getKind();
+		StatementResult hit = c.get(scope, runKind, statement);
+		if(hit != null) {
+			listener.update(hit);
+			return -1;
+		}
+		return submitStatement(s, statement, kind, policy, new StatementResultListener() {
+			@Override
+			public void update(StatementResult result) {
+				c.put(scope, runKind, statement, result);
+				listener.update(result);
+			}
+
+			@Override
+			public void onError(Exception cause) {
+				listener.onError(cause);
+			}
+		});
+	}
+
+	/**
+	 * Runs a Spark SQL query in the current session. See query(InteractiveSession, String, int, PollingPolicy).
+	 * @param sql SQL query
+	 * @return Result of the query. The caller must close it.
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public QueryResult query(String sql) throws LivyException, IOException {
+		return query(current(), sql);
+	}
+
+	/**
+	 * Runs a Spark SQL query in the given session with the default page size.
+	 * @param s Session
+	 * @param sql SQL query
+	 * @return Result of the query. The caller must close it.
+	 * @throws LivyException
+	 * @throws IOException
+	 */
+	public QueryResult query(InteractiveSession s, String sql) throws LivyException, IOException {
+		return query(s, sql, QueryResult.DEFAULT_PAGE_SIZE, new JitteredPollingPolicy(new ExponentialPollingPolicy(50, 2000, 2), 0.1));
+	}
+
+	/**
+	 * Runs a Spark SQL query in the given session as "sql" statements.
+	 * The result is cached on the cluster in a temporary view with a row number, and it is read
+	 * back in pages of the given size while the rows are iterated, so a large result never
+	 * arrives in one response. The view is dropped when the result is closed.
+	 * The rows are numbered by RDD.zipWithIndex() in a "spark" statement rather than by a global window,
+	 * so the result keeps its partitions. zipWithIndex() runs one more job to count the rows of each
+	 * partition, so the query is evaluated twice, and a query whose rows are not deterministic
+	 * (e.g. rand() or TABLESAMPLE) must be made so, e.g. by caching its input, to be numbered consistently.
+	 * The columns of the query must have unique names, e.g. alias the columns of a join that share
+	 * a name, since the result is stored in a view.
+	 * @param s Session. The session must support "spark" and "sql" statements, which requires Livy 0.5 or later.
+	 * @param sql SQL query
+	 * @param pageSize Number of rows fetched per statement. It must not exceed livy.rsc.sql.num-rows
+	 *  of livy server (1000 by default), or the pages are cut short and more statements are needed.
+	 * @param policy Policy that decides the interval time for monitoring the statements
+	 * @return Result of the query. The caller must close it.
+	 * @throws LivyException if the query fails
+	 * @throws IOException
+	 */
+	public QueryResult query(InteractiveSession s, String sql, int pageSize, PollingPolicy policy) throws LivyException, IOException {
+		if(pageSize < 1) throw new IllegalArgumentException("Page size must be positive.");
+		String view = "livy_query_" + UUID.randomUUID().toString().replace("-", "");
+		String body = sql.trim();
+		if(body.endsWith(";")) body = body.substring(0, body.length() - 1);
+		execute(s, QueryResult.numberRows(body, view), SessionKind.SPARK, policy);
+		QueryResult result = new QueryResult(this, s, view, pageSize, policy);
+		try {
+			execute(s, "CACHE TABLE " + view, SessionKind.SQL, policy);
+			result.countRows();
+		} catch(LivyException | IOException | RuntimeException e) {
+			try {
+				result.close();
+			} catch(IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * Submits a statement of the given kind and waits for its completion without adding it to the history.
+	 * @param s Session
+	 * @param code Statement code
+	 * @param kind Statement kind
+	 * @param policy Policy that decides the interval time for monitoring the statement
+	 * @return Completed statement
+	 * @throws LivyException if the statement fails
+	 * @throws IOException
+	 */
+	Statements execute(InteractiveSession s, String code, SessionKind kind, PollingPolicy policy) throws LivyException, IOException {
+		int stmtId = submitStatement(s, code, kind);
+		long start = System.currentTimeMillis();
+		int attempt = 1;
+		while(true) {
+			Statements st = fetchStatement(s.getId(), stmtId);
+			if(st.isCompleted()) {
+				if(st.output == null || "error".equals(st.output.status)) {
+					String msg = (st.output != null) ? st.output.ename + ": " + st.output.evalue : st.state;
+					throw new LivyException("Statement " + stmtId + " failed. " + msg);
+				}
+				return st;
+			}
+			double progress = StatementResult.STATE_RUNNING.equals(st.state) ? st.progress : -1;
+			try {
+				Thread.sleep(policy.nextDelay(attempt++, System.currentTimeMillis() - start, progress));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for statement " + stmtId + ".");
+			}
+		}
+	}
+
+	/**
+	 * Gets the result of a statement
+	 * @param statementId Statement id returned by submitStatement
+	 * @return Result of the statement in JSON format
+	 * @throws IOException
+	 */
+	public String getStatementResult(int statementId) throws IOException {
+		return getStatementResult(current(), statementId);
+	}
+
+	/**
+	 * Gets the result of a statement in the given session
+	 * @param s Session
+	 * @param statementId Statement id returned by submitStatement
+	 * @return Result of the statement in JSON format
+	 * @throws IOException
+	 */
+	public String getStatementResult(InteractiveSession s, int statementId) throws IOException {
+		try (LivyResponse resp = send("GET", "/sessions/" + s.getId() + "/statements/" + statementId, null)) {
+			checkResponse(resp);
+			return readString(resp);
+		}
+	}
+
+	/**
+	 * Fetches a statement by its id.
+	 * @param sessionId Session id
+	 * @param id Statement id
+	 * @return Statement
+	 * @throws IOException
+	 */
+	Statements fetchStatement(int sessionId, int id) throws IOException {
+		try (LivyResponse resp = send("GET", "/sessions/" + sessionId + "/statements/" + id, null)) {
+			checkResponse(resp);
+			return readStatements(resp, Statements.class);
+		}
+	}
+
+	/**
+	 * Fetches a page of the statements retained by livy server.
+	 * Livy reads from and size as positions in its list of retained statements, not as ids, so they match
+	 * the ids only until livy.rsc.retained-statements (100 by default) evicts the oldest statements.
+	 * Check the ids of the returned statements.
+	 * @param sessionId Session id
+	 * @param from Position of the first statement
+	 * @param size Number of statements
+	 * @return Statements
+	 * @throws IOException
+	 */
+	List<Statements> fetchStatements(int sessionId, int from, int size) throws IOException {
+		try (LivyResponse resp = send("GET", "/sessions/" + sessionId + "/statements?from=" + from + "&size=" + size, null)) {
+			checkResponse(resp);
+			StatementResults ret = readStatements(resp, StatementResults.class);
+			return (ret.statements != null) ? ret.statements : Collections.<Statements>emptyList();
+		}
+	}
+
 	/**
 	 * Gets the result of statements
 	 * See https://msdn.microsoft.com/en-us/library/azure/mt613032.aspx
@@ -363,26 +654,20 @@ System.out.println("ID: " + session.getId());
 	 * @throws IOException
 	 */
 	public String getStatementResult() throws IOException {
-		BufferedReader br = null;
-		String line = null;
-		StringBuilder sb = new StringBuilder();
-			
-		HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/sessions/" + session.getId() + "/statements").openConnection();  
-		Authenticator.setDefault(auth);
-	    con.setRequestMethod("GET");
-	    con.setRequestProperty("Content-Type", "application/json");
-        con.setRequestProperty("X-Requested-By", "admin");
-		          
-	    br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));  
-	    try {
-	    	while ((line = br.readLine()) != null) {
-	    		sb.append(line);
-	    		sb.append("\r\n");  
-	    	}
-	    } finally {
-	    	if(br != null) br.close();
-	    }
-		return sb.toString();
+		return getStatementResult(current());
+	}
+
+	/**
+	 * Gets the result of statements in the given session
+	 * @param s Session
+	 * @return Result of statement in JSON format
+	 * @throws IOException
+	 */
+	public String getStatementResult(InteractiveSession s) throws IOException {
+		try (LivyResponse resp = send("GET", "/sessions/" + s.getId() + "/statements", null)) {
+			checkResponse(resp);
+			return readString(resp);
+		}
 	}
 	
 	/**
@@ -390,56 +675,89 @@ System.out.println("ID: " + session.getId());
 	 * @throws IOException
 	 */
 	public void deleteSession() throws IOException {
-		BufferedReader br = null;
-		
-		try {
-			HttpURLConnection con = (HttpURLConnection)new URL(baseUri + "/sessions/" + session.getId()).openConnection();  
-			Authenticator.setDefault(auth);
-	    	con.setRequestMethod("DELETE");
-	    	con.setRequestProperty("Content-Type", "application/json");
-	    	con.setRequestProperty("X-Requested-By", "admin");
-	    	br = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));  
-	    	String line = null;
-	    	StringBuilder buf = new StringBuilder();
-	    	while ((line = br.readLine()) != null) {
-	    		buf.append(line);
-	    		buf.append("\r\n");  
-	    	}
-	    } finally {
-	    	if(br != null) br.close();
-	    	array.clear();
-	    	session.reset();
-	    	if(sessionThd != null && sessionThd.isShutdown() == false)	sessionThd.shutdown();
-	    	if(stmtThd != null && stmtThd.isShutdown() == false)	stmtThd.shutdown();
-	    }
+		deleteSession(current());
 	}
-}
 
-class StatementResults {
-	public int total_statements;
-	public List<Statements> statements;
-}
+	/**
+	 * Deletes the given session
+	 * @param s Session
+	 * @throws IOException
+	 */
+	public void deleteSession(InteractiveSession s) throws IOException {
+		int id = s.getId();
+		try (LivyResponse resp = send("DELETE", "/sessions/" + id, null)) {
+			checkResponse(resp);
+		} finally {
+			cancelPolling(pollKey(id));
+			sessions.remove(id, s);
+			s.clearResults();
+			s.reset();
+		}
+	}
 
-class Statements {
-	public int id;
-	public String state;
-	public Output output;
-	// Added from HDI 3.6 (Spark 2.2.)
-	public String code; // "spark"
-	// Added from HDI 3.6 (Spark 2.2.)
-	public float progress;
-}
+	/**
+	 * Converts a completed statement into a result.
+	 * @param s Statement
+	 * @param statement Statement code
+	 * @return Result
+	 */
+	static StatementResult toStatementResult(Statements s, String statement) {
+		if(s.output == null) {
+			return new StatementResult(s.id, s.state, 0, "error", "", statement);
+		}
+		if(s.output.status.equals("error") || s.output.data == null) {
+			return new StatementResult(s.id, s.state, s.output.execution_count, s.output.status, "", statement);
+		}
+		StatementResult r = new StatementResult(s.id, s.state, s.output.execution_count, s.output.status, s.output.data.text, statement);
+		r.setTable(s.output.data.table);
+		return r;
+	}
 
-class Output {
-	public String status;
-	public int execution_count;
-	public String ename;
-	public String evalue;
-	public String[] traceback;
-	public Data data;
-}
+	/**
+	 * Binds statements with the spill threshold of this client for their outputs.
+	 */
+	private <T> T readStatements(LivyResponse resp, Class<T> cls) throws IOException {
+		return JsonConverter.readerFor(cls).withAttribute(OutputBuffer.class, outputSpillThreshold).readValue(resp.getBody());
+	}
+
+	private InteractiveSession current() {
+		InteractiveSession s = session;
+		if(s == null) throw new IllegalStateException("No session is created yet.");
+		return s;
+	}
+
+	private String pollKey(int sessionId) {
+		return baseUri + "/sessions/" + sessionId;
+	}
+
+	/**
+	 * Polls an interactive session for LivyPoller.
+	 */
+	private class SessionTarget implements LivyPoller.Target {
+		private final InteractiveSession target;
+
+		SessionTarget(InteractiveSession s) {
+			target = s;
+		}
 
-class Data {
-	@JsonProperty("text/plain")
-	public String text;
+		@Override
+		public Session fetchSession() throws IOException {
+			return getSession(target);
+		}
+
+		@Override
+		public List<Statements> fetchStatements(int from, int size) throws IOException {
+			return LivyInteractiveClient.this.fetchStatements(target.getId(), from, size);
+		}
+
+		@Override
+		public Statements fetchStatement(int id) throws IOException {
+			return LivyInteractiveClient.this.fetchStatement(target.getId(), id);
+		}
+
+		@Override
+		public StatementResult complete(Statements s, String statement) {
+			return toStatementResult(s, statement);
+		}
+	}
 }
@@ -0,0 +1,433 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Monitors sessions and statements with a small fixed number of threads.
+ * All the watchers of the same session are grouped, and each group issues at most one
+ * session request and one statement request per tick, whose result is fanned out to the
+ * watchers. The poller can be shared by several clients.
+ * A failed request is retried with a growing delay. When a session fails maxFailures times in a row,
+ * or when it is cancelled or the poller is closed, every pending watcher of the session is notified
+ * through onError() of its listener.
+ */
+public class LivyPoller implements Closeable {
+
+	public static final int DEFAULT_THREADS = 2;
+	public static final int DEFAULT_MAX_FAILURES = 5;
+	// Statements are fetched in pages no longer than this, so sparse ids do not fetch everything in between.
+	static final int STATEMENT_WINDOW = 20;
+	private static final long RETRY_DELAY = 500;
+	private static final long MAX_RETRY_DELAY = 30 * 1000L;
+
+	private static final AtomicInteger poolCount = new AtomicInteger();
+
+	private final ScheduledThreadPoolExecutor executor;
+	private final ConcurrentHashMap<String, PollGroup> groups = new ConcurrentHashMap<String, PollGroup>();
+	private volatile int maxFailures = DEFAULT_MAX_FAILURES;
+
+	/**
+	 * Creates a poller with the default number of threads.
+	 */
+	public LivyPoller() {
+		this(DEFAULT_THREADS);
+	}
+
+	/**
+	 * Creates a poller.
+	 * @param threads Number of threads that send the status requests
+	 */
+	public LivyPoller(int threads) {
+		final int pool = poolCount.incrementAndGet();
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ScheduledThreadPoolExecutor(threads, r -> {
+			Thread t = new Thread(r, "livy-poller-" + pool + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Gets the number of sessions being monitored.
+	 * @return number of sessions
+	 */
+	public int getSessionCount() {
+		return groups.size();
+	}
+
+	/**
+	 * Gets the number of session and statement watchers being monitored.
+	 * @return number of watchers
+	 */
+	public int getWatcherCount() {
+		int count = 0;
+		for(PollGroup g : groups.values()) count += g.size();
+		return count;
+	}
+
+	/**
+	 * Sets the number of consecutive failed requests after which the watchers of a session are dropped.
+	 * @param num Number of failures
+	 */
+	public void setMaxFailures(int num) {
+		if(num < 1) throw new IllegalArgumentException("maxFailures must be positive.");
+		maxFailures = num;
+	}
+
+	public int getMaxFailures() {
+		return maxFailures;
+	}
+
+	/**
+	 * Stops monitoring. Every pending watcher is notified with CancellationException.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		for(String key : groups.keySet()) {
+			PollGroup group = groups.remove(key);
+			if(group != null) group.kill(new CancellationException("Poller is closed."));
+		}
+	}
+
+	/**
+	 * Starts monitoring the session status.
+	 * @param key Key that identifies the session, such as its uri
+	 * @param target Target to be polled
+	 * @param policy Polling policy
+	 * @param listener Listener to be notified on every poll
+	 */
+	void watchSession(String key, Target target, PollingPolicy policy, SessionEventListener listener) {
+		add(key, target, new Watch(policy, listener, null, -1, null));
+	}
+
+	/**
+	 * Starts monitoring a statement until it completes.
+	 * @param key Key that identifies the session, such as its uri
+	 * @param target Target to be polled
+	 * @param statementId Statement id
+	 * @param statement Statement code
+	 * @param policy Polling policy
+	 * @param listener Listener to be notified once when the statement completes
+	 */
+	void watchStatement(String key, Target target, int statementId, String statement, PollingPolicy policy, StatementResultListener listener) {
+		add(key, target, new Watch(policy, null, listener, statementId, statement));
+	}
+
+	/**
+	 * Stops monitoring the session and its statements. The pending watchers are notified with CancellationException.
+	 * @param key Key that identifies the session
+	 */
+	void cancel(String key) {
+		PollGroup group = groups.remove(key);
+		if(group != null) group.kill(new CancellationException("Monitoring of the session is cancelled."));
+	}
+
+	private void add(String key, Target target, Watch w) {
+		if(executor.isShutdown()) throw new IllegalStateException("Poller is already closed.");
+		while(true) {
+			PollGroup group = groups.computeIfAbsent(key, k -> new PollGroup(k, target));
+			if(group.add(w)) return;
+			// The group has just been retired. Retry with a new one.
+			groups.remove(key, group);
+		}
+	}
+
+	/**
+	 * The source of the status of a session.
+	 */
+	interface Target {
+		/**
+		 * Gets the latest session status.
+		 */
+		Session fetchSession() throws IOException;
+
+		/**
+		 * Gets a page of the statements retained by livy server. from and size are positions,
+		 * which match the ids only until livy server evicts old statements.
+		 */
+		List<Statements> fetchStatements(int from, int size) throws IOException;
+
+		/**
+		 * Gets a statement by its id.
+		 */
+		Statements fetchStatement(int id) throws IOException;
+
+		/**
+		 * Converts a completed statement into the result to be delivered.
+		 */
+		StatementResult complete(Statements s, String statement);
+	}
+
+	/**
+	 * A session watcher or a statement watcher.
+	 */
+	private static class Watch {
+		final PollingPolicy policy;
+		final SessionEventListener sessionListener;
+		final StatementResultListener statementListener;
+		final int statementId;
+		final String statement;
+		final long start = System.currentTimeMillis();
+		// Set once the listener received its last notification.
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		long due = start;
+		int attempt = 0;
+
+		Watch(PollingPolicy policy, SessionEventListener sl, StatementResultListener rl, int id, String stmt) {
+			this.policy = policy;
+			sessionListener = sl;
+			statementListener = rl;
+			statementId = id;
+			statement = stmt;
+		}
+
+		boolean isStatement() {
+			return statementListener != null;
+		}
+
+		void next(long now, double progress) {
+			due = now + Math.max(0, policy.nextDelay(++attempt, now - start, progress));
+		}
+
+		void complete(StatementResult result) {
+			if(finished.compareAndSet(false, true) == false) return;
+			try {
+				statementListener.update(result);
+			} catch(RuntimeException e) {
+				report(e);
+			}
+		}
+
+		void fail(Exception cause) {
+			if(finished.compareAndSet(false, true) == false) return;
+			try {
+				if(isStatement()) statementListener.onError(cause);
+				else sessionListener.onError(cause);
+			} catch(RuntimeException e) {
+				report(e);
+			}
+		}
+	}
+
+	/**
+	 * Hands an exception thrown by a listener to the uncaught exception handler, so that the poller thread keeps running.
+	 */
+	static void report(RuntimeException e) {
+		Thread t = Thread.currentThread();
+		t.getUncaughtExceptionHandler().uncaughtException(t, e);
+	}
+
+	/**
+	 * The watchers of one session.
+	 */
+	private class PollGroup {
+		private final String key;
+		private final Target target;
+		private final List<Watch> watches = new ArrayList<Watch>();
+		private boolean running = false;
+		private boolean dead = false;
+		private long scheduledAt = Long.MAX_VALUE;
+		private long generation = 0;
+		// Consecutive failed polls. Only the thread running the group touches it.
+		private int failures = 0;
+		// Set once a page missed a pending statement, i.e. livy server evicted old statements and the
+		// positions no longer match the ids. They never match again, so only per-id requests are sent.
+		// Only the thread running the group touches it.
+		private boolean byId = false;
+
+		PollGroup(String key, Target target) {
+			this.key = key;
+			this.target = target;
+		}
+
+		synchronized int size() {
+			return watches.size();
+		}
+
+		synchronized boolean add(Watch w) {
+			if(dead) return false;
+			watches.add(w);
+			if(running == false && w.due < scheduledAt) schedule(w.due);
+			return true;
+		}
+
+		void kill(Exception cause) {
+			List<Watch> dropped;
+			synchronized(this) {
+				dead = true;
+				generation++;
+				dropped = new ArrayList<Watch>(watches);
+				watches.clear();
+			}
+			for(Watch w : dropped) w.fail(cause);
+		}
+
+		// Must be called with the lock held.
+		private void schedule(long at) {
+			final long gen = ++generation;
+			scheduledAt = at;
+			executor.schedule(() -> run(gen), Math.max(0, at - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		}
+
+		private void run(long gen) {
+			List<Watch> sessionDue = new ArrayList<Watch>();
+			List<Watch> statements = new ArrayList<Watch>();
+			boolean statementDue = false;
+			long now = System.currentTimeMillis();
+			synchronized(this) {
+				if(gen != generation || dead) return;
+				running = true;
+				scheduledAt = Long.MAX_VALUE;
+				for(Watch w : watches) {
+					if(w.isStatement()) {
+						statements.add(w);
+						if(w.due <= now) statementDue = true;
+					} else if(w.due <= now) {
+						sessionDue.add(w);
+					}
+				}
+			}
+
+			List<Watch> done = new ArrayList<Watch>();
+			List<Watch> failed = new ArrayList<Watch>();
+			IOException error = null;
+			try {
+				if(sessionDue.isEmpty() == false) {
+					error = pollSession(sessionDue, done, now);
+					if(error != null) failed.addAll(sessionDue);
+				}
+				// Every pending statement is refreshed by the same requests once any of them is due.
+				if(statementDue) {
+					IOException e = pollStatements(statements, done, now);
+					if(e != null) {
+						error = e;
+						failed.addAll(statements);
+					}
+				}
+				if(error == null) {
+					failures = 0;
+					failed.clear();
+				} else if(++failures >= maxFailures) {
+					done.addAll(failed);
+				} else {
+					long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(failures - 1, 16));
+					for(Watch w : failed) w.due = now + delay;
+					failed.clear();
+				}
+			} finally {
+				synchronized(this) {
+					running = false;
+					watches.removeAll(done);
+					if(dead == false) {
+						if(watches.isEmpty()) {
+							dead = true;
+							groups.remove(key, this);
+						} else {
+							long next = Long.MAX_VALUE;
+							for(Watch w : watches) next = Math.min(next, w.due);
+							schedule(next);
+						}
+					}
+				}
+			}
+			for(Watch w : failed) w.fail(error);
+		}
+
+		private IOException pollSession(List<Watch> due, List<Watch> done, long now) {
+			Session s;
+			try {
+				s = target.fetchSession();
+			} catch(IOException e) {
+				return e;
+			}
+			for(Watch w : due) {
+				boolean ret = false;
+				try {
+					ret = w.sessionListener.updateStatus(s);
+				} catch(RuntimeException e) {
+					report(e);
+				}
+				if(ret) {
+					w.next(now, -1);
+				} else {
+					w.finished.set(true);
+					done.add(w);
+				}
+			}
+			return null;
+		}
+
+		private IOException pollStatements(List<Watch> pending, List<Watch> done, long now) {
+			TreeSet<Integer> ids = new TreeSet<Integer>();
+			for(Watch w : pending) ids.add(w.statementId);
+			Map<Integer, Statements> fetched = new HashMap<Integer, Statements>();
+			try {
+				// Nearby ids share one page, and a page never spans more than STATEMENT_WINDOW ids.
+				List<Integer> single = new ArrayList<Integer>();
+				Integer from = ids.first();
+				while(from != null) {
+					int to = from;
+					Integer next = ids.higher(to);
+					while(next != null && next - from < STATEMENT_WINDOW) {
+						to = next;
+						next = ids.higher(to);
+					}
+					if(byId || to == from) {
+						single.addAll(ids.subSet(from, true, to, true));
+					} else {
+						for(Statements s : target.fetchStatements(from, to - from + 1)) fetched.put(s.id, s);
+						for(Integer id : ids.subSet(from, true, to, true)) {
+							if(fetched.containsKey(id)) continue;
+							byId = true;
+							single.add(id);
+						}
+					}
+					from = next;
+				}
+				for(Integer id : single) fetched.put(id, target.fetchStatement(id));
+			} catch(IOException e) {
+				return e;
+			}
+			for(Watch w : pending) {
+				Statements s = fetched.get(w.statementId);
+				if(s != null && s.isCompleted()) {
+					done.add(w);
+					w.complete(target.complete(s, w.statement));
+				} else if(w.due <= now) {
+					w.next(now, (s != null && StatementResult.STATE_RUNNING.equals(s.state)) ? s.progress : -1);
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents a request to be sent to Livy server.
+ */
+public class LivyRequest {
+
+	private String method = "GET";
+	private URL url = null;
+	private Map<String, String> headers = new LinkedHashMap<String, String>();
+	private byte[] body = null;
+	private LivyRequestBody streamingBody = null;
+
+	/**
+	 * Creates a request.
+	 * @param method HTTP method such as GET, POST and DELETE
+	 * @param url Request URL
+	 */
+	public LivyRequest(String method, URL url) {
+		this.method = method;
+		this.url = url;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * Sets a request header. The existing value is replaced.
+	 * @param name Header name
+	 * @param value Header value
+	 */
+	public void setHeader(String name, String value) {
+		headers.put(name, value);
+	}
+
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Sets the request body.
+	 * @param data Body data, or null for no body
+	 */
+	public void setBody(byte[] data) {
+		body = data;
+		streamingBody = (data != null) ? new BytesBody(data) : null;
+	}
+
+	/**
+	 * Sets the request body that is written directly to the connection.
+	 * @param data Body, or null for no body
+	 */
+	public void setBody(LivyRequestBody data) {
+		body = null;
+		streamingBody = data;
+	}
+
+	/**
+	 * Gets the body set as a byte array.
+	 * @return Body data, or null if no body is set or the body is set as a LivyRequestBody
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Gets the body to be written to the connection. A body set as a byte array is also returned.
+	 * @return Body, or null for no body
+	 */
+	public LivyRequestBody getStreamingBody() {
+		return streamingBody;
+	}
+
+	private static class BytesBody implements LivyRequestBody {
+		private final byte[] data;
+
+		BytesBody(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public long getLength() {
+			return data.length;
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			out.write(data);
+		}
+	}
+}
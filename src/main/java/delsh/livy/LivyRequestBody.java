@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request body that is written directly to the connection, so a large body does not have to
+ * be built in memory before it is sent.
+ */
+public interface LivyRequestBody {
+
+	/**
+	 * Gets the number of bytes written by writeTo().
+	 * @return Length in bytes, or -1 if unknown. A body of unknown length is sent in chunked streaming mode.
+	 */
+	public long getLength();
+
+	/**
+	 * Returns true if writeTo() can be called more than once, so the request can be sent again
+	 * after new credentials are obtained.
+	 * @return true if repeatable
+	 */
+	public boolean isRepeatable();
+
+	/**
+	 * Writes the body to the stream. The stream is not closed.
+	 * @param out Output stream
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException;
+}
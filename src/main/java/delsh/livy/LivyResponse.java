@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Represents a response returned from Livy server.
+ */
+public interface LivyResponse extends Closeable {
+
+	/**
+	 * Gets the HTTP status code.
+	 * @return status code
+	 */
+	public int getStatusCode();
+
+	/**
+	 * Gets the response body. The error body is returned when the status code is 400 or above.
+	 * @return Response body. Never null.
+	 * @throws IOException
+	 */
+	public InputStream getBody() throws IOException;
+
+	/**
+	 * Consumes the rest of the body and releases the connection.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException;
+}
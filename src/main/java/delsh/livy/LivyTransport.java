@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The interface for sending HTTP requests to Livy server.
+ * Both LivyInteractiveClient and LivyBatchClient go through a transport, so one transport
+ * can be shared by several clients talking to the same cluster.
+ */
+public interface LivyTransport extends Closeable {
+
+	/**
+	 * Sends the request and returns the response once the status line is received.
+	 * The caller must close the response so that the underlying connection can be reused.
+	 * The body must be taken from getStreamingBody(), since a large body is not given as a byte array.
+	 * @param request Request to send
+	 * @return Response from Livy server
+	 * @throws IOException
+	 */
+	public LivyResponse execute(LivyRequest request) throws IOException;
+}
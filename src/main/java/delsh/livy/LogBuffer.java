@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LogSink that keeps the latest lines in a bounded ring buffer.
+ * The oldest lines are overwritten when the buffer is full. The lines can also be forwarded to another sink,
+ * e.g. a sink that ships them to a log aggregation pipeline.
+ */
+public class LogBuffer implements LogSink {
+
+	private final String[] lines;
+	private final LogSink next;
+	// Index in the whole log of the line after the last buffered one.
+	private int end = 0;
+	private int count = 0;
+
+	/**
+	 * Creates a buffer.
+	 * @param capacity Maximum number of lines kept in memory
+	 */
+	public LogBuffer(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * Creates a buffer that also forwards the lines to the given sink.
+	 * @param capacity Maximum number of lines kept in memory
+	 * @param next Sink that receives the lines after they are buffered, or null
+	 */
+	public LogBuffer(int capacity, LogSink next) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+		lines = new String[capacity];
+		this.next = next;
+	}
+
+	@Override
+	public void onLines(int from, List<String> newLines) throws IOException {
+		synchronized(this) {
+			// Lines skipped on the server make a gap, so the buffered ones are no longer contiguous.
+			if(from != end) count = 0;
+			for(String line : newLines) {
+				lines[from % lines.length] = line;
+				from++;
+			}
+			end = from;
+			count = Math.min(lines.length, count + newLines.size());
+		}
+		if(next != null) next.onLines(from - newLines.size(), newLines);
+	}
+
+	/**
+	 * Gets the index in the whole log of the oldest buffered line.
+	 * @return Index of the first line
+	 */
+	public synchronized int getFirstIndex() {
+		return end - count;
+	}
+
+	/**
+	 * Gets the number of buffered lines.
+	 * @return Number of lines
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the buffered lines.
+	 * @return Copy of the lines from the oldest
+	 */
+	public List<String> getLines() {
+		return getLines(0);
+	}
+
+	/**
+	 * Gets the buffered lines from the given index in the whole log.
+	 * @param from Index of the first line. Lines already dropped from the buffer are skipped.
+	 * @return Copy of the lines
+	 */
+	public synchronized List<String> getLines(int from) {
+		int start = Math.max(from, end - count);
+		List<String> list = new ArrayList<String>(Math.max(0, end - start));
+		for(int i = start; i < end; i++) {
+			list.add(lines[i % lines.length]);
+		}
+		return list;
+	}
+}
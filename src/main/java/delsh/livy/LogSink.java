@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the log lines fetched by LogTailer.
+ */
+@FunctionalInterface
+public interface LogSink {
+
+	/**
+	 * Called with new log lines in order.
+	 * @param from Index of the first line in the whole log. After lines were dropped on the server,
+	 *  it counts only the lines passed to the sink.
+	 * @param lines New lines
+	 * @throws IOException
+	 */
+	void onLines(int from, List<String> lines) throws IOException;
+
+	/**
+	 * Called when livy server dropped lines from its log buffer before they were fetched.
+	 * The lines passed next follow the lost lines.
+	 * @throws IOException
+	 */
+	default void onGap() throws IOException {
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tails the log of a livy session.
+ * The tailer remembers the offset of the next line and requests only the new lines with from/size,
+ * so the whole log is never downloaded again. The lines are passed to a LogSink.
+ * <p>
+ * Livy server keeps only the last livy.cache-log.size lines (200 by default) of a session, and from/total
+ * are indexes in that buffer. Once the buffer is full, total stops growing and the lines move towards the
+ * head of the buffer. The tailer therefore requests the last lines it has seen together with the new ones,
+ * and when they are no longer at the expected place, it fetches the tail of the buffer and passes on only
+ * the lines after the last lines seen. If none of them are left, the lines in between were dropped on the
+ * server; LogSink.onGap() is called and the tail is passed on. A log that repeats the same lines may not be
+ * told apart from a buffer that did not move, so poll often enough not to lose lines.
+ */
+public class LogTailer {
+
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+	// Number of the last lines kept to find the position in a buffer that has moved.
+	static final int OVERLAP = 10;
+
+	/**
+	 * Fetches log pages and the session state for LogTailer.
+	 */
+	interface Source {
+		LogPage fetch(int from, int size) throws IOException;
+		boolean isFinished() throws IOException;
+	}
+
+	private final Source source;
+	private final LogSink sink;
+	private final List<String> recent = new ArrayList<String>();
+	private int offset = 0;
+	private int position = 0;
+	private int pageSize = DEFAULT_PAGE_SIZE;
+
+	LogTailer(Source source, LogSink sink) {
+		this.source = source;
+		this.sink = sink;
+	}
+
+	/**
+	 * Gets the index of the next line to be fetched in the buffer of livy server.
+	 * @return Offset
+	 */
+	public synchronized int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Sets the index of the next line to be fetched, e.g. to resume tailing.
+	 * @param offset Offset
+	 */
+	public synchronized void setOffset(int offset) {
+		this.offset = offset;
+		position = offset;
+		recent.clear();
+	}
+
+	public synchronized int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Sets the maximum number of lines fetched by a request.
+	 * @param size Page size
+	 */
+	public synchronized void setPageSize(int size) {
+		if(size < 1) throw new IllegalArgumentException("Page size must be positive.");
+		pageSize = size;
+	}
+
+	/**
+	 * Fetches the lines added since the last call and passes them to the sink.
+	 * @return Number of the new lines
+	 * @throws IOException
+	 */
+	public synchronized int poll() throws IOException {
+		int count = 0;
+		while(true) {
+			int overlap = Math.min(recent.size(), offset);
+			LogPage page = source.fetch(offset - overlap, pageSize + overlap);
+			if(isAligned(page.log, overlap) == false) return count + resync(page.total);
+			int size = page.log.size() - overlap;
+			if(size == 0) {
+				// The log may have been truncated on the server.
+				if(page.total < offset) offset = page.total;
+				return count;
+			}
+			deliver(page.log.subList(overlap, page.log.size()));
+			offset = page.from + page.log.size();
+			count += size;
+			if(size < pageSize || offset >= page.total) return count;
+		}
+	}
+
+	/**
+	 * Checks if the page starts with the last lines seen, that is, the buffer has not moved.
+	 */
+	private boolean isAligned(List<String> lines, int overlap) {
+		if(lines.size() < overlap) return false;
+		int base = recent.size() - overlap;
+		for(int i = 0; i < overlap; i++) {
+			if(lines.get(i).equals(recent.get(base + i)) == false) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Fetches the tail of the buffer after it has moved, and passes on the lines after the last lines seen.
+	 */
+	private int resync(int total) throws IOException {
+		LogPage page = source.fetch(Math.max(0, total - pageSize), pageSize);
+		List<String> lines = page.log;
+		int end = findRecent(lines);
+		if(end < 0) {
+			sink.onGap();
+			end = 0;
+		}
+		offset = page.from + lines.size();
+		if(end == lines.size()) return 0;
+		deliver(lines.subList(end, lines.size()));
+		return lines.size() - end;
+	}
+
+	/**
+	 * Finds the last place of the last lines seen in the lines.
+	 * @return Index next to the last line seen, or -1 if none of them are in the lines
+	 */
+	private int findRecent(List<String> lines) {
+		for(int end = lines.size(); end > 0; end--) {
+			int k = Math.min(end, recent.size());
+			boolean found = k > 0;
+			for(int i = 1; i <= k && found; i++) {
+				found = lines.get(end - i).equals(recent.get(recent.size() - i));
+			}
+			if(found) return end;
+		}
+		return -1;
+	}
+
+	private void deliver(List<String> lines) throws IOException {
+		sink.onLines(position, lines);
+		position += lines.size();
+		recent.addAll(lines);
+		if(recent.size() > OVERLAP) recent.subList(0, recent.size() - OVERLAP).clear();
+	}
+
+	/**
+	 * Keeps fetching the new lines until the session reaches a final state.
+	 * The state is checked only when no new line is found, and the remaining lines are fetched after that.
+	 * @param policy Policy that decides the interval time between polls
+	 * @throws IOException
+	 */
+	public void follow(PollingPolicy policy) throws IOException {
+		long start = System.currentTimeMillis();
+		int attempt = 1;
+		while(true) {
+			if(poll() > 0) {
+				attempt = 1;
+			} else if(source.isFinished()) {
+				poll();
+				return;
+			}
+			try {
+				Thread.sleep(policy.nextDelay(attempt++, System.currentTimeMillis() - start, -1));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while following the log.");
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Holds the text output of a statement.
+ * Small outputs are kept as a string. An output longer than the spill threshold is written to a temporary
+ * file while it is parsed, and read through a memory-mapped buffer, so it does not occupy the Java heap.
+ * The file is deleted as soon as it is mapped; the mapping is released when the buffer is garbage collected.
+ * The output can be read as a Reader, an InputStream of UTF-8 or a CharSequence without building a string.
+ */
+public class OutputBuffer extends Writer {
+
+	/** Default number of characters above which an output is spilled to a file. */
+	public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+	private final int threshold;
+	private StringBuilder memory = new StringBuilder();
+	private File file = null;
+	private Writer fileWriter = null;
+	private long length = 0;
+	private CharSequence content = null;
+
+	/**
+	 * Creates a buffer.
+	 * @param threshold Number of characters above which the output is spilled to a file. 0 or less never spills.
+	 */
+	public OutputBuffer(int threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if(content != null) throw new IOException("Buffer is already closed.");
+		if(fileWriter == null && threshold > 0 && memory.length() + len > threshold) spill();
+		if(fileWriter != null) {
+			fileWriter.write(cbuf, off, len);
+		} else {
+			memory.append(cbuf, off, len);
+		}
+		length += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(fileWriter != null) fileWriter.flush();
+	}
+
+	/**
+	 * Finishes writing. The views are available after this.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if(content != null) return;
+		if(fileWriter == null) {
+			content = memory.toString();
+			memory = null;
+			return;
+		}
+		fileWriter.close();
+		fileWriter = null;
+		if(length * 2 > Integer.MAX_VALUE) {
+			file.delete();
+			throw new IOException("Output is too large to be mapped. " + length + " characters");
+		}
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			content = ch.map(FileChannel.MapMode.READ_ONLY, 0, length * 2).asCharBuffer();
+		} finally {
+			// A mapped file can be deleted on POSIX; on Windows it is deleted on exit.
+			if(file.delete() == false) file.deleteOnExit();
+			file = null;
+		}
+	}
+
+	/**
+	 * Gets the number of characters.
+	 * @return Length
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Checks if the output is held in a file instead of the heap.
+	 * @return true if spilled
+	 */
+	public boolean isSpilled() {
+		return content instanceof CharBuffer;
+	}
+
+	/**
+	 * Gets the output as a CharSequence. A spilled output is read directly from the mapped file.
+	 * @return Output
+	 */
+	public CharSequence asCharSequence() {
+		CharSequence c = closed();
+		return (c instanceof CharBuffer) ? ((CharBuffer)c).duplicate() : c;
+	}
+
+	/**
+	 * Opens a reader of the output.
+	 * @return Reader
+	 */
+	public Reader openReader() {
+		CharSequence c = closed();
+		if(c instanceof CharBuffer) return new CharBufferReader(((CharBuffer)c).duplicate());
+		return new StringReader(c.toString());
+	}
+
+	/**
+	 * Opens a stream of the output encoded in UTF-8.
+	 * @return Input stream
+	 */
+	public InputStream openStream() {
+		CharSequence c = closed();
+		return new EncodingInputStream((c instanceof CharBuffer) ? ((CharBuffer)c).duplicate() : CharBuffer.wrap(c));
+	}
+
+	/**
+	 * Builds a string of the whole output. Use the other views for a spilled output.
+	 * @return Output
+	 */
+	@Override
+	public String toString() {
+		return closed().toString();
+	}
+
+	private CharSequence closed() {
+		if(content == null) throw new IllegalStateException("Buffer is not closed yet.");
+		return content;
+	}
+
+	private void spill() throws IOException {
+		file = File.createTempFile("livy-output-", ".tmp");
+		file.deleteOnExit();
+		fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_16BE), 64 * 1024);
+		fileWriter.append(memory);
+		memory = null;
+	}
+
+	private static class CharBufferReader extends Reader {
+		private final CharBuffer buf;
+
+		CharBufferReader(CharBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if(len == 0) return 0;
+			if(buf.hasRemaining() == false) return -1;
+			int n = Math.min(len, buf.remaining());
+			buf.get(cbuf, off, n);
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Encodes characters into UTF-8 chunk by chunk.
+	 */
+	private static class EncodingInputStream extends InputStream {
+		private final CharBuffer in;
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private final ByteBuffer out = ByteBuffer.allocate(8192);
+		private boolean flushed = false;
+
+		EncodingInputStream(CharBuffer in) {
+			this.in = in;
+			out.flip();
+		}
+
+		@Override
+		public int read() {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(len == 0) return 0;
+			while(out.hasRemaining() == false) {
+				if(flushed) return -1;
+				out.clear();
+				CoderResult r = encoder.encode(in, out, true);
+				if(r.isUnderflow() && in.hasRemaining() == false) {
+					encoder.flush(out);
+					flushed = true;
+				}
+				out.flip();
+			}
+			int n = Math.min(len, out.remaining());
+			out.get(b, off, n);
+			return n;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+/**
+ * Reads a text output into an OutputBuffer without building a string.
+ * The spill threshold is given as the reader attribute keyed by OutputBuffer.class.
+ */
+class OutputDeserializer extends JsonDeserializer<OutputBuffer> {
+
+	@Override
+	public OutputBuffer deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+		Object attr = ctxt.getAttribute(OutputBuffer.class);
+		int threshold = (attr instanceof Integer) ? (Integer)attr : OutputBuffer.DEFAULT_SPILL_THRESHOLD;
+		OutputBuffer buf = new OutputBuffer(threshold);
+		p.getText(buf);
+		buf.close();
+		return buf;
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+/**
+ * The interface to decide how long to wait before the next status poll.
+ * Implementations must be thread-safe because one policy can be shared by several monitors.
+ */
+public interface PollingPolicy {
+
+	/**
+	 * Returns the delay before the next poll.
+	 * @param attempt Number of polls done so far. 1 for the first delay.
+	 * @param elapsed Time in milliseconds since the monitoring started
+	 * @param progress Progress between 0 and 1 reported by livy server, or a negative value if unknown
+	 * @return Delay in milliseconds
+	 */
+	public long nextDelay(int attempt, long elapsed, double progress);
+}
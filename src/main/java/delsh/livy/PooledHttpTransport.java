@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The default transport backed by HttpURLConnection.
+ * The number of requests in flight per host is bounded, and every response is fully consumed when it is closed,
+ * so that the JDK keep-alive cache can hand the same socket (and TLS session) to the next request.
+ * The default bound is 5 that is the same as the default size of the JDK keep-alive cache per host.
+ * This transport is a concurrency limiter only. The sockets are owned by the JDK keep-alive cache, which
+ * closes idle ones by itself (see the http.keepAlive and http.maxConnections system properties), so
+ * neither the idle timeout nor close() closes a socket.
+ */
+public class PooledHttpTransport implements LivyTransport {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+	public static final int DEFAULT_READ_TIMEOUT = 60000;
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+	private final int maxConnectionsPerHost;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final long idleTimeout;
+	private final ConcurrentHashMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a transport with the default settings.
+	 */
+	public PooledHttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Creates a transport.
+	 * @param maxConnectionsPerHost Maximum number of connections opened to the same host at once
+	 * @param connectTimeout Timeout in milliseconds for connecting, also used as the maximum wait for a free connection
+	 * @param readTimeout Timeout in milliseconds for reading the response
+	 * @param idleTimeout Time in milliseconds after which the limiter of an unused host is dropped
+	 */
+	public PooledHttpTransport(int maxConnectionsPerHost, int connectTimeout, int readTimeout, long idleTimeout) {
+		if(maxConnectionsPerHost < 1) throw new IllegalArgumentException("maxConnectionsPerHost must be positive.");
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	@Override
+	public LivyResponse execute(LivyRequest request) throws IOException {
+		if(closed) throw new IOException("Transport is already closed.");
+
+		URL url = request.getUrl();
+		evictIdlePools();
+		// Reserved inside compute() so that eviction never drops a pool that is about to be used.
+		HostPool pool = pools.compute(url.getProtocol() + "://" + url.getAuthority(), (k, p) -> {
+			if(p == null) p = new HostPool(k, maxConnectionsPerHost);
+			p.users++;
+			return p;
+		});
+		pool.acquire(connectTimeout);
+
+		HttpURLConnection con = null;
+		try {
+			con = (HttpURLConnection)url.openConnection();
+			con.setConnectTimeout(connectTimeout);
+			con.setReadTimeout(readTimeout);
+			con.setUseCaches(false);
+			con.setRequestMethod(request.getMethod());
+			for(Map.Entry<String, String> e : request.getHeaders().entrySet()) {
+				con.setRequestProperty(e.getKey(), e.getValue());
+			}
+			LivyRequestBody body = request.getStreamingBody();
+			if(body != null) {
+				con.setDoOutput(true);
+				long length = body.getLength();
+				if(length >= 0) {
+					con.setFixedLengthStreamingMode(length);
+				} else {
+					con.setChunkedStreamingMode(0);
+				}
+				try (OutputStream os = con.getOutputStream()) {
+					body.writeTo(os);
+				}
+			}
+			return new PooledResponse(pool, con, con.getResponseCode());
+		} catch(IOException | RuntimeException e) {
+			if(con != null) con.disconnect();
+			pool.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the number of hosts currently tracked by this transport.
+	 * @return number of host pools
+	 */
+	public int getHostCount() {
+		return pools.size();
+	}
+
+	/**
+	 * Closes the transport. Requests in progress are not interrupted, but no new request is accepted.
+	 * The sockets in the JDK keep-alive cache are not closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		pools.clear();
+	}
+
+	private void evictIdlePools() {
+		long now = System.currentTimeMillis();
+		for(String key : pools.keySet()) {
+			pools.computeIfPresent(key, (k, p) -> p.isIdle(now, idleTimeout) ? null : p);
+		}
+	}
+
+	/**
+	 * Bounds the requests in flight to a single host.
+	 */
+	private class HostPool {
+		private final String key;
+		private final Semaphore permits;
+		// Number of requests that reserved this pool. Changed only inside compute() of the map.
+		private int users = 0;
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		HostPool(String key, int size) {
+			this.key = key;
+			permits = new Semaphore(size, true);
+		}
+
+		void acquire(long timeout) throws IOException {
+			try {
+				if(permits.tryAcquire(timeout, TimeUnit.MILLISECONDS) == false) {
+					unreserve();
+					throw new IOException("Timed out waiting for a free connection.");
+				}
+			} catch(InterruptedException e) {
+				unreserve();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a free connection.");
+			}
+			lastUsed = System.currentTimeMillis();
+		}
+
+		void release() {
+			lastUsed = System.currentTimeMillis();
+			permits.release();
+			unreserve();
+		}
+
+		private void unreserve() {
+			pools.computeIfPresent(key, (k, p) -> {
+				if(p == this) users--;
+				return p;
+			});
+		}
+
+		boolean isIdle(long now, long timeout) {
+			return users == 0 && now - lastUsed > timeout;
+		}
+	}
+
+	/**
+	 * A response that gives the connection back to the pool on close.
+	 */
+	private static class PooledResponse implements LivyResponse {
+		private final HostPool pool;
+		private final HttpURLConnection con;
+		private final int status;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		private InputStream body = null;
+
+		PooledResponse(HostPool pool, HttpURLConnection con, int status) {
+			this.pool = pool;
+			this.con = con;
+			this.status = status;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return status;
+		}
+
+		@Override
+		public synchronized InputStream getBody() throws IOException {
+			if(body == null) {
+				body = (status >= 400) ? con.getErrorStream() : con.getInputStream();
+				if(body == null) body = new ByteArrayInputStream(new byte[0]);
+			}
+			return body;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(released.compareAndSet(false, true) == false) return;
+			try {
+				// The connection goes back to the keep-alive cache only when the body is read to the end.
+				InputStream in = getBody();
+				byte[] buf = new byte[4096];
+				while(in.read(buf) != -1) { }
+				in.close();
+			} catch(IOException e) {
+				con.disconnect();
+			} finally {
+				pool.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+/**
+ * A session borrowed from InteractiveSessionPool. Statements are submitted with the session-taking
+ * methods of getClient() such as submitStatement(getSession(), code), since the client is shared by
+ * all the sessions of the pool. The session must be given back by InteractiveSessionPool.checkin() after use.
+ */
+public class PooledSession {
+
+	static final int STARTING = 0;
+	static final int IDLE = 1;
+	static final int IN_USE = 2;
+	static final int RETIRED = 3;
+	// Taken out of the idle sessions while the health check runs.
+	static final int CHECKING = 4;
+
+	private final String profile;
+	private final LivyInteractiveClient client;
+	volatile InteractiveSession session = null;
+	int poolState = STARTING;
+	long lastUsed = System.currentTimeMillis();
+	int healthCheckFailures = 0;
+
+	PooledSession(String profile, LivyInteractiveClient client) {
+		this.profile = profile;
+		this.client = client;
+	}
+
+	/**
+	 * Gets the client shared by the sessions of the pool.
+	 * @return client
+	 */
+	public LivyInteractiveClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Gets the session.
+	 * @return session
+	 */
+	public InteractiveSession getSession() {
+		return session;
+	}
+
+	String getProfile() {
+		return profile;
+	}
+}
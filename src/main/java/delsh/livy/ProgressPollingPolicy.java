@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+/**
+ * Decides the delay from the progress reported by livy server.
+ * The remaining time is estimated from the elapsed time and the progress, and the next poll
+ * is done when about half of it has passed. Until the progress is known, the delay grows
+ * exponentially from the minimum, so short statements are picked up quickly.
+ */
+public class ProgressPollingPolicy implements PollingPolicy {
+
+	private final long min;
+	private final long max;
+
+	/**
+	 * @param min The minimum delay in milliseconds
+	 * @param max The maximum delay in milliseconds
+	 */
+	public ProgressPollingPolicy(long min, long max) {
+		if(min < 0 || max < min) throw new IllegalArgumentException("0 <= min <= max is required.");
+		this.min = min;
+		this.max = max;
+	}
+
+	@Override
+	public long nextDelay(int attempt, long elapsed, double progress) {
+		long delay;
+		if(progress > 0 && progress < 1) {
+			delay = (long)(elapsed * (1 - progress) / progress / 2);
+		} else if(progress >= 1) {
+			delay = min;
+		} else {
+			delay = (long)(min * Math.pow(2, Math.min(30, Math.max(0, attempt - 1))));
+		}
+		if(delay < min) return min;
+		if(delay > max) return max;
+		return delay;
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * Result of a Spark SQL query run by LivyInteractiveClient.query().
+ * The rows are kept on the cluster in a temporary view and fetched page by page as "sql" statements,
+ * so only one page of columns is held in memory while iterating. Each page is decoded into a ColumnarTable.
+ * The number of rows is counted when the view is created, and iteration ends after that many rows,
+ * so a page cut short by livy server does not end the result early.
+ */
+public class QueryResult implements Iterable<QueryResult.Row>, Closeable {
+
+	/**
+	 * Default number of rows per page. Livy server returns at most livy.rsc.sql.num-rows rows
+	 * (1000 by default) for a "sql" statement, so a page size must not exceed that setting.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	/** Name of the row number column added to the temporary view. */
+	static final String ROW_COLUMN = "__livy_row";
+
+	/**
+	 * Builds a "spark" statement that registers the result of the query as a temporary view with
+	 * a row number starting from 1. The rows are numbered by RDD.zipWithIndex(), which counts the rows
+	 * of each partition in a separate job and keeps the partitions, unlike row_number() over a window
+	 * without PARTITION BY that moves the whole result into a single partition.
+	 * @param sql SQL query
+	 * @param view Name of the temporary view
+	 * @return Scala code
+	 */
+	static String numberRows(String sql, String view) {
+		return "{\n"
+				+ "val df = spark.sql(" + scalaString(sql) + ")\n"
+				+ "val rows = df.rdd.zipWithIndex.map { case (r, i) => org.apache.spark.sql.Row.fromSeq(r.toSeq :+ (i + 1)) }\n"
+				+ "spark.createDataFrame(rows, df.schema.add(" + scalaString(ROW_COLUMN) + ", org.apache.spark.sql.types.LongType, false))"
+				+ ".createOrReplaceTempView(" + scalaString(view) + ")\n"
+				+ "}";
+	}
+
+	private static String scalaString(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '"':	sb.append("\\\""); break;
+			case '\\':	sb.append("\\\\"); break;
+			case '\n':	sb.append("\\n"); break;
+			case '\r':	sb.append("\\r"); break;
+			case '\t':	sb.append("\\t"); break;
+			default:
+				if(c < 0x20) sb.append(String.format("\\u%04x", (int)c));
+				else sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private final LivyInteractiveClient client;
+	private final InteractiveSession session;
+	private final String view;
+	private final int pageSize;
+	private final PollingPolicy policy;
+	private long rowCount = 0;
+	private volatile boolean closed = false;
+
+	QueryResult(LivyInteractiveClient client, InteractiveSession session, String view, int pageSize, PollingPolicy policy) {
+		this.client = client;
+		this.session = session;
+		this.view = view;
+		this.pageSize = pageSize;
+		this.policy = policy;
+	}
+
+	/**
+	 * Gets the name of the temporary view that holds the result on the cluster.
+	 * @return View name
+	 */
+	public String getViewName() {
+		return view;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Gets the number of rows of the result.
+	 * @return Number of rows
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Counts the rows of the view. Called once by LivyInteractiveClient.query().
+	 * @throws LivyException if the statement fails
+	 * @throws IOException
+	 */
+	void countRows() throws LivyException, IOException {
+		Statements st = client.execute(session, "SELECT COUNT(*) FROM " + view, SessionKind.SQL, policy);
+		ColumnarTable table = (st.output.data != null) ? st.output.data.table : null;
+		if(table == null || table.getRowCount() != 1) throw new LivyException("No row count is returned for the query.");
+		rowCount = new Row(table, 0).getLong(0);
+	}
+
+	/**
+	 * Fetches the rows in the given range.
+	 * @param from Index of the first row, starting from 0
+	 * @param size Maximum number of rows
+	 * @return Rows. Fewer rows than size are returned at the end of the result, and when size exceeds
+	 *  livy.rsc.sql.num-rows of livy server.
+	 * @throws LivyException if the statement fails
+	 * @throws IOException
+	 */
+	public ColumnarTable fetchPage(long from, int size) throws LivyException, IOException {
+		if(closed) throw new IllegalStateException("The query result is already closed.");
+		Statements st = client.execute(session, "SELECT * FROM " + view + " WHERE " + ROW_COLUMN + " > " + from
+				+ " AND " + ROW_COLUMN + " <= " + (from + size) + " ORDER BY " + ROW_COLUMN, SessionKind.SQL, policy);
+		ColumnarTable table = (st.output.data != null) ? st.output.data.table : null;
+		if(table == null) throw new LivyException("No table is returned for the query.");
+		return table.without(ROW_COLUMN);
+	}
+
+	/**
+	 * Creates a lazy iterator over the rows. A page is requested only when the rows of the previous
+	 * page are consumed. An IOException while fetching a page is thrown as UncheckedIOException,
+	 * and a LivyException as IllegalStateException.
+	 * @return Iterator of the rows
+	 */
+	@Override
+	public Iterator<Row> iterator() {
+		return new Iterator<Row>() {
+			private ColumnarTable page = null;
+			private int index = 0;
+			private long from = 0;
+
+			@Override
+			public boolean hasNext() {
+				while((page == null || index >= page.getRowCount()) && from < rowCount) {
+					try {
+						page = fetchPage(from, (int)Math.min(pageSize, rowCount - from));
+					} catch(IOException e) {
+						throw new UncheckedIOException(e);
+					} catch(LivyException e) {
+						throw new IllegalStateException(e.getMessage(), e);
+					}
+					if(page.getRowCount() == 0) {
+						throw new IllegalStateException("No rows are returned after row " + from + " of " + rowCount + ".");
+					}
+					// A short page is not the end. The next page starts after the rows actually returned.
+					index = 0;
+					from += page.getRowCount();
+				}
+				return page != null && index < page.getRowCount();
+			}
+
+			@Override
+			public Row next() {
+				if(hasNext() == false) throw new NoSuchElementException();
+				return new Row(page, index++);
+			}
+		};
+	}
+
+	/**
+	 * Creates a lazy sequential stream over the rows.
+	 * @return Stream of the rows
+	 */
+	public Stream<Row> stream() {
+		return AbstractLivyClient.stream(iterator());
+	}
+
+	/**
+	 * Drops the temporary view and releases its cache on the cluster.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed) return;
+		closed = true;
+		try {
+			client.execute(session, "UNCACHE TABLE IF EXISTS " + view, SessionKind.SQL, policy);
+			client.execute(session, "DROP VIEW IF EXISTS " + view, SessionKind.SQL, policy);
+		} catch(LivyException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * A row of the result. Numeric values are widened when they are read with a wider type,
+	 * and any value can be read as a string. Null values are read as 0, false or null.
+	 */
+	public static class Row {
+		private final ColumnarTable table;
+		private final int row;
+
+		Row(ColumnarTable table, int row) {
+			this.table = table;
+			this.row = row;
+		}
+
+		public int getColumnCount() {
+			return table.getColumnCount();
+		}
+
+		/**
+		 * Gets the index of the column of the given name.
+		 * @param name Column name
+		 * @return Column index
+		 * @throws IllegalArgumentException if the column is not found
+		 */
+		public int indexOf(String name) {
+			for(int i = 0; i < table.getColumnCount(); i++) {
+				if(table.getColumn(i).getName().equals(name)) return i;
+			}
+			throw new IllegalArgumentException("No such column. " + name);
+		}
+
+		public boolean isNull(int col) {
+			return table.getColumn(col).isNull(row);
+		}
+
+		public int getInt(int col) {
+			return ((ColumnarTable.IntColumn)table.getColumn(col)).get(row);
+		}
+
+		public long getLong(int col) {
+			ColumnarTable.Column c = table.getColumn(col);
+			if(c instanceof ColumnarTable.IntColumn) return ((ColumnarTable.IntColumn)c).get(row);
+			return ((ColumnarTable.LongColumn)c).get(row);
+		}
+
+		public double getDouble(int col) {
+			ColumnarTable.Column c = table.getColumn(col);
+			if(c instanceof ColumnarTable.DoubleColumn) return ((ColumnarTable.DoubleColumn)c).get(row);
+			return getLong(col);
+		}
+
+		public boolean getBoolean(int col) {
+			return ((ColumnarTable.BooleanColumn)table.getColumn(col)).get(row);
+		}
+
+		public String getString(int col) {
+			Object v = getObject(col);
+			return (v != null) ? v.toString() : null;
+		}
+
+		/**
+		 * Gets the value as a boxed object.
+		 * @param col Column index
+		 * @return Integer, Long, Double, Boolean or String, or null
+		 */
+		public Object getObject(int col) {
+			ColumnarTable.Column c = table.getColumn(col);
+			if(c.isNull(row)) return null;
+			switch(c.getType()) {
+			case INT:		return ((ColumnarTable.IntColumn)c).get(row);
+			case LONG:		return ((ColumnarTable.LongColumn)c).get(row);
+			case DOUBLE:	return ((ColumnarTable.DoubleColumn)c).get(row);
+			case BOOLEAN:	return ((ColumnarTable.BooleanColumn)c).get(row);
+			default:		return ((ColumnarTable.StringColumn)c).get(row);
+			}
+		}
+
+		public boolean isNull(String name) {
+			return isNull(indexOf(name));
+		}
+
+		public int getInt(String name) {
+			return getInt(indexOf(name));
+		}
+
+		public long getLong(String name) {
+			return getLong(indexOf(name));
+		}
+
+		public double getDouble(String name) {
+			return getDouble(indexOf(name));
+		}
+
+		public boolean getBoolean(String name) {
+			return getBoolean(indexOf(name));
+		}
+
+		public String getString(String name) {
+			return getString(indexOf(name));
+		}
+
+		public Object getObject(String name) {
+			return getObject(indexOf(name));
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Token bucket that limits the number of requests per second.
+ * Up to one second worth of tokens can be saved for a burst.
+ */
+class RateLimiter {
+
+	private final double rate;
+	private final double capacity;
+	private double tokens;
+	private long last;
+
+	/**
+	 * @param permitsPerSecond Number of requests per second. 0 or less means no limit.
+	 */
+	RateLimiter(double permitsPerSecond) {
+		rate = permitsPerSecond;
+		capacity = Math.max(1, permitsPerSecond);
+		tokens = capacity;
+		last = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token, waiting until one is available.
+	 * @throws InterruptedIOException
+	 */
+	void acquire() throws InterruptedIOException {
+		if(rate <= 0) return;
+		long wait;
+		synchronized(this) {
+			long now = System.nanoTime();
+			tokens = Math.min(capacity, tokens + (now - last) * rate / 1e9);
+			last = now;
+			tokens -= 1;
+			// A negative balance is the debt of the callers waiting in line.
+			wait = (tokens >= 0) ? 0 : (long)(-tokens / rate * 1e9);
+		}
+		if(wait == 0) return;
+		try {
+			Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the rate limit.");
+		}
+	}
+}
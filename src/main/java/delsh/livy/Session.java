@@ -31,12 +31,18 @@ abstract public class Session {
 	
 	public static final int BUSY = 6;
 	public static final int NOT_STARTED = 7;
+	// Removed from livy server before its final state was seen
+	public static final int GONE = 8;
+	// Being stopped. Followed by DEAD, or by SUCCESS for a batch.
+	public static final int SHUTTING_DOWN = 9;
 	
-	private int session_id = Session.STARTING;
-	private int state = Session.STARTING;
-	private String appId = null;
-	private String appInfo = null;
-	private String log = null;
+	// Updated by the poller thread while the caller reads them.
+	private volatile int session_id = Session.STARTING;
+	private volatile int state = Session.STARTING;
+	private volatile String appId = null;
+	private volatile String appInfo = null;
+	private volatile String log = null;
+	private volatile String owner = null;
 	
 	public Session(int id) {
 		session_id = id;
@@ -78,8 +84,40 @@ abstract public class Session {
 		this.log = log;
 	}
 	
+	public String getOwner() {
+		return owner;
+	}
+
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	
 	public void reset() {
 		session_id = Session.STARTING;
 		state = Session.STARTING;
 	}
+
+	/**
+	 * Converts a state string returned from livy server to the state value.
+	 * @param st State string such as "idle" or "running"
+	 * A session being recovered after livy server restarts is reported as STARTING, and a killed one as DEAD.
+	 * @return State value. ERROR is returned for null or an unknown state.
+	 */
+	public static int toState(String st) {
+		if(st == null) return Session.ERROR;
+		switch(st) {
+		case "not_started":	return Session.NOT_STARTED;
+		case "starting":	return Session.STARTING;
+		case "recovering":	return Session.STARTING;
+		case "idle":		return Session.IDLE;
+		case "busy":		return Session.BUSY;
+		case "running":		return Session.RUNNING;
+		case "success":		return Session.SUCCESS;
+		case "shutting_down":	return Session.SHUTTING_DOWN;
+		case "dead":		return Session.DEAD;
+		case "killed":		return Session.DEAD;
+		case "error":		return Session.ERROR;
+		default:			return Session.ERROR;
+		}
+	}
 }
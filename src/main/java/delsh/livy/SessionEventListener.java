@@ -27,4 +27,12 @@ public interface SessionEventListener {
 	 * @return Return true to continue to get the update. False to stop receiving the status update.
 	 */
 	public boolean updateStatus(Session event);
+
+	/**
+	 * Called once when the session is no longer monitored while the listener still wants updates.
+	 * @param cause IOException if the status could not be fetched after retries,
+	 * or CancellationException if the monitoring was cancelled or the poller was closed
+	 */
+	public default void onError(Exception cause) {
+	}
 }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Conditions for iterating over sessions and batches.
+ * The conditions are checked while each page is parsed, so the sessions that do not match are never built.
+ * A condition that is not set matches everything.
+ */
+public class SessionFilter {
+
+	private Set<Integer> states = null;
+	private String owner = null;
+	private SessionKind kind = null;
+
+	/**
+	 * Sets the states to be included.
+	 * @param st State values such as Session.IDLE and Session.RUNNING
+	 */
+	public void setStates(int... st) {
+		states = new HashSet<Integer>();
+		for(int s : st) states.add(s);
+	}
+
+	public Set<Integer> getStates() {
+		return states;
+	}
+
+	/**
+	 * Sets the owner to be included.
+	 * @param owner Owner of the sessions
+	 */
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Sets the kind of the interactive sessions to be included.
+	 * @param kind Session kind
+	 */
+	public void setKind(SessionKind kind) {
+		this.kind = kind;
+	}
+
+	public SessionKind getKind() {
+		return kind;
+	}
+
+	boolean matches(SessionInfo info) {
+		if(states != null && states.contains(Session.toState(info.state)) == false) return false;
+		if(owner != null && owner.equals(info.owner) == false) return false;
+		if(kind != null && kind.toString().equals(info.kind) == false) return false;
+		return true;
+	}
+}
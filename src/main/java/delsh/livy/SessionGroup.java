@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads statements over a group of interactive sessions.
+ * A statement without a key goes to the session with the fewest outstanding statements.
+ * A statement with a key goes to the session chosen by consistent hashing, so the statements that
+ * depend on the same session-local state (e.g. a cached DataFrame) always run on the same session.
+ * Each session has its own StatementPipeline, so the statements of a session keep their order.
+ */
+public class SessionGroup implements Closeable {
+
+	/** Number of points of each session on the hash ring. */
+	static final int VIRTUAL_NODES = 128;
+
+	private final List<StatementPipeline> pipelines;
+	private final TreeMap<Integer, StatementPipeline> ring = new TreeMap<Integer, StatementPipeline>();
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Creates a group of the given sessions. The sessions must be idle or starting.
+	 * @param client Client used for submitting and monitoring the statements
+	 * @param sessions Sessions in the group
+	 * @param capacity Maximum number of outstanding statements per session
+	 * @param policy Policy for monitoring the statements
+	 */
+	public SessionGroup(LivyInteractiveClient client, List<InteractiveSession> sessions, int capacity, PollingPolicy policy) {
+		if(sessions.isEmpty()) throw new IllegalArgumentException("A group needs at least one session.");
+		List<StatementPipeline> list = new ArrayList<StatementPipeline>();
+		for(InteractiveSession s : sessions) {
+			StatementPipeline p = new StatementPipeline(client, s, capacity, policy);
+			list.add(p);
+			for(int v = 0; v < VIRTUAL_NODES; v++) {
+				ring.put(hash(s.getId() + "#" + v), p);
+			}
+		}
+		pipelines = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Submits a statement to the session with the fewest outstanding statements.
+	 * @param statement Statement code
+	 * @return Future of the result
+	 * @throws IOException
+	 * @throws LivyException
+	 */
+	public CompletableFuture<StatementResult> submit(String statement) throws IOException, LivyException {
+		return leastOutstanding().submit(statement);
+	}
+
+	/**
+	 * Submits a statement to the session assigned to the key.
+	 * The same key is always assigned to the same session while the group is not changed.
+	 * @param key Key such as the name of the data the statement works on
+	 * @param statement Statement code
+	 * @return Future of the result
+	 * @throws IOException
+	 * @throws LivyException
+	 */
+	public CompletableFuture<StatementResult> submit(String key, String statement) throws IOException, LivyException {
+		return route(key).submit(statement);
+	}
+
+	/**
+	 * Submits statements to the sessions with the fewest outstanding statements.
+	 * @param statements Statement codes
+	 * @return Future completed with the results in the same order as the statements
+	 * @throws IOException
+	 * @throws LivyException
+	 */
+	public CompletableFuture<List<StatementResult>> submitAll(List<String> statements) throws IOException, LivyException {
+		List<CompletableFuture<StatementResult>> futures = new ArrayList<CompletableFuture<StatementResult>>();
+		for(String statement : statements) {
+			futures.add(submit(statement));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+			List<StatementResult> results = new ArrayList<StatementResult>(futures.size());
+			for(CompletableFuture<StatementResult> f : futures) {
+				results.add(f.join());
+			}
+			return results;
+		});
+	}
+
+	/**
+	 * Gets the session assigned to the key.
+	 * @param key Key
+	 * @return Session
+	 */
+	public InteractiveSession getSession(String key) {
+		return route(key).getSession();
+	}
+
+	/**
+	 * Gets the sessions in the group.
+	 * @return Sessions
+	 */
+	public List<InteractiveSession> getSessions() {
+		List<InteractiveSession> list = new ArrayList<InteractiveSession>();
+		for(StatementPipeline p : pipelines) {
+			list.add(p.getSession());
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the number of outstanding statements of all the sessions.
+	 * @return Number of statements
+	 */
+	public int getOutstandingCount() {
+		int n = 0;
+		for(StatementPipeline p : pipelines) {
+			n += p.getOutstandingCount();
+		}
+		return n;
+	}
+
+	/**
+	 * Closes the pipelines of the sessions. The sessions are not deleted.
+	 */
+	@Override
+	public void close() {
+		for(StatementPipeline p : pipelines) {
+			p.close();
+		}
+	}
+
+	private StatementPipeline leastOutstanding() {
+		// Start from a rotating position so that ties are spread over the sessions.
+		int start = Math.floorMod(next.getAndIncrement(), pipelines.size());
+		StatementPipeline best = null;
+		int min = Integer.MAX_VALUE;
+		for(int i = 0; i < pipelines.size(); i++) {
+			StatementPipeline p = pipelines.get((start + i) % pipelines.size());
+			int n = p.getOutstandingCount();
+			if(n < min) {
+				min = n;
+				best = p;
+			}
+		}
+		return best;
+	}
+
+	private StatementPipeline route(String key) {
+		Map.Entry<Integer, StatementPipeline> e = ring.ceilingEntry(hash(key));
+		return (e != null ? e : ring.firstEntry()).getValue();
+	}
+
+	/**
+	 * FNV-1a followed by the MurmurHash3 finalizer, so that similar keys spread over the ring.
+	 */
+	static int hash(String key) {
+		int h = 0x811c9dc5;
+		for(byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b;
+			h *= 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * POJO class representing a session returned from /sessions and /batches.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class SessionInfo {
+	public int id;
+	public String appId;
+	public String owner;
+	public String proxyUser;
+	public String state;
+	public String kind;
+	// An object on recent livy, a string on old one.
+	public JsonNode appInfo;
+	// An array of lines on recent livy, a string on old one.
+	public JsonNode log;
+
+	/**
+	 * Copies the state and application info into the given session.
+	 * @param session Session to be updated
+	 */
+	void applyTo(Session session) {
+		session.setState(Session.toState(state));
+		if(appId != null) session.setAppId(appId);
+		if(owner != null) session.setOwner(owner);
+		if(appInfo != null) session.setAppInfo(appInfo.isTextual() ? appInfo.asText() : appInfo.toString());
+		if(log != null) session.setLog(joinLines(log));
+	}
+
+	static String joinLines(JsonNode node) {
+		if(node.isArray() == false) return node.asText();
+		StringBuilder sb = new StringBuilder();
+		for(JsonNode line : node) {
+			if(sb.length() > 0) sb.append("\n");
+			sb.append(line.asText());
+		}
+		return sb.toString();
+	}
+}
@@ -23,7 +23,10 @@ public enum SessionKind {
 	// Possible values are the following.
 	SPARK("spark"),
 	PYSPARK("pyspark"),
-	SPARKR("sparkr");
+	SPARKR("sparkr"),
+	SQL("sql"),
+	// A session that runs statements of any kind. Each statement specifies its own kind.
+	SHARED("shared");
 	
 	private String kind;
 	
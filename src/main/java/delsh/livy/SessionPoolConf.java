@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+/**
+ * Configuration for InteractiveSessionPool. The settings are applied to every profile.
+ */
+public class SessionPoolConf {
+
+	private int minIdle = 1;
+	private int maxTotal = 4;
+	private long idleTimeout = 30 * 60 * 1000L;
+	private long healthCheckInterval = 30 * 1000L;
+	private int maxHealthCheckFailures = 3;
+	private PollingPolicy startPolicy = new JitteredPollingPolicy(new ExponentialPollingPolicy(500, 5000, 1.5), 0.2);
+
+	/**
+	 * Sets the number of sessions kept warm for each profile.
+	 * @param num Number of sessions
+	 */
+	public void setMinIdle(int num) {
+		if(num < 0) throw new IllegalArgumentException("minIdle must not be negative.");
+		minIdle = num;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	/**
+	 * Sets the maximum number of sessions for each profile, including the sessions in use.
+	 * @param num Number of sessions
+	 */
+	public void setMaxTotal(int num) {
+		if(num < 1) throw new IllegalArgumentException("maxTotal must be positive.");
+		maxTotal = num;
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * Sets the time after which an unused session is deleted. Sessions are not deleted below minIdle.
+	 * @param millis Time in milliseconds
+	 */
+	public void setIdleTimeout(long millis) {
+		idleTimeout = millis;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the interval of the health check that replaces dead sessions and deletes expired ones.
+	 * @param millis Time in milliseconds
+	 */
+	public void setHealthCheckInterval(long millis) {
+		if(millis <= 0) throw new IllegalArgumentException("healthCheckInterval must be positive.");
+		healthCheckInterval = millis;
+	}
+
+	public long getHealthCheckInterval() {
+		return healthCheckInterval;
+	}
+
+	/**
+	 * Sets the number of consecutive health checks that fail with an I/O error before an idle session
+	 * is replaced. A session reported dead by livy server is replaced at once.
+	 * @param num Number of failures
+	 */
+	public void setMaxHealthCheckFailures(int num) {
+		if(num < 1) throw new IllegalArgumentException("maxHealthCheckFailures must be positive.");
+		maxHealthCheckFailures = num;
+	}
+
+	public int getMaxHealthCheckFailures() {
+		return maxHealthCheckFailures;
+	}
+
+	/**
+	 * Sets the policy used for monitoring sessions being started.
+	 * @param policy Polling policy
+	 */
+	public void setStartPolicy(PollingPolicy policy) {
+		startPolicy = policy;
+	}
+
+	public PollingPolicy getStartPolicy() {
+		return startPolicy;
+	}
+}
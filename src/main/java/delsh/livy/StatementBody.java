@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The body of a statement request, {"code":"...","kind":"..."}.
+ * The code is JSON-escaped and encoded in UTF-8 while it is written to the connection, so a script
+ * of several megabytes is sent without building an escaped copy of it. The code must not be escaped by the caller.
+ * The length of a body from a String is counted up front and the body is sent with a fixed length.
+ * A body from a Reader or a file is sent in chunked streaming mode. A body from a Reader can be sent only once.
+ */
+public class StatementBody implements LivyRequestBody {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private interface Source {
+		void copyTo(Encoder enc) throws IOException;
+	}
+
+	private final Source source;
+	private final String code;
+	private final SessionKind kind;
+	private final boolean repeatable;
+	private long length = -1;
+	private boolean written = false;
+
+	private StatementBody(Source source, String code, SessionKind kind, boolean repeatable) {
+		this.source = source;
+		this.code = code;
+		this.kind = kind;
+		this.repeatable = repeatable;
+	}
+
+	/**
+	 * Creates a body from a string.
+	 * @param code Statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @return Body
+	 */
+	public static StatementBody of(String code, SessionKind kind) {
+		StatementBody body = new StatementBody(enc -> enc.escape(code), code, kind, true);
+		Encoder counter = new Encoder(null);
+		try {
+			body.write(counter);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);	// Never happens without an output stream.
+		}
+		body.length = counter.count;
+		return body;
+	}
+
+	/**
+	 * Creates a body from a reader. The reader is read while the request is sent, and it is not closed.
+	 * @param code Reader of the statement code
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @return Body
+	 */
+	public static StatementBody of(Reader code, SessionKind kind) {
+		return new StatementBody(enc -> enc.escape(code), null, kind, false);
+	}
+
+	/**
+	 * Creates a body from a script file encoded in UTF-8.
+	 * @param script Script file
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @return Body
+	 */
+	public static StatementBody of(Path script, SessionKind kind) {
+		return of(script, StandardCharsets.UTF_8, kind);
+	}
+
+	/**
+	 * Creates a body from a script file. The file is read each time the request is sent.
+	 * @param script Script file
+	 * @param cs Charset of the file
+	 * @param kind Statement kind, or null to use the kind of the session
+	 * @return Body
+	 */
+	public static StatementBody of(Path script, Charset cs, SessionKind kind) {
+		return new StatementBody(enc -> {
+			try (Reader r = Files.newBufferedReader(script, cs)) {
+				enc.escape(r);
+			}
+		}, null, kind, true);
+	}
+
+	/**
+	 * Gets the statement code.
+	 * @return Code, or null if the body is read from a reader or a file
+	 */
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * Gets the statement kind.
+	 * @return Statement kind, or null to use the kind of the session
+	 */
+	public SessionKind getKind() {
+		return kind;
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return repeatable;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		synchronized(this) {
+			if(written && repeatable == false) throw new IOException("The statement body can be sent only once.");
+			written = true;
+		}
+		Encoder enc = new Encoder(out);
+		write(enc);
+		enc.flush();
+	}
+
+	private void write(Encoder enc) throws IOException {
+		enc.ascii("{\"code\":\"");
+		source.copyTo(enc);
+		enc.ascii("\"");
+		if(kind != null) {
+			enc.ascii(",\"kind\":\"");
+			enc.escape(kind.toString());
+			enc.ascii("\"");
+		}
+		enc.ascii("}");
+	}
+
+	/**
+	 * Writes JSON-escaped UTF-8 to a stream through a fixed buffer, or only counts the bytes if the stream is null.
+	 */
+	private static class Encoder {
+		private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+		private final OutputStream out;
+		private final byte[] buf = new byte[BUFFER_SIZE];
+		private int pos = 0;
+		private long count = 0;
+		// A high surrogate waiting for its low surrogate, which may come in the next read.
+		private char high = 0;
+
+		Encoder(OutputStream out) {
+			this.out = out;
+		}
+
+		void ascii(String s) throws IOException {
+			for(int i = 0; i < s.length(); i++) {
+				put(s.charAt(i));
+			}
+		}
+
+		void escape(CharSequence s) throws IOException {
+			for(int i = 0; i < s.length(); i++) {
+				escape(s.charAt(i));
+			}
+			endOfText();
+		}
+
+		void escape(Reader r) throws IOException {
+			char[] cbuf = new char[BUFFER_SIZE];
+			int n;
+			while((n = r.read(cbuf)) >= 0) {
+				for(int i = 0; i < n; i++) {
+					escape(cbuf[i]);
+				}
+			}
+			endOfText();
+		}
+
+		private void escape(char c) throws IOException {
+			if(high != 0) {
+				char h = high;
+				high = 0;
+				if(Character.isLowSurrogate(c)) {
+					int cp = Character.toCodePoint(h, c);
+					put(0xf0 | (cp >> 18));
+					put(0x80 | ((cp >> 12) & 0x3f));
+					put(0x80 | ((cp >> 6) & 0x3f));
+					put(0x80 | (cp & 0x3f));
+					return;
+				}
+				unicode(h);
+			}
+			if(c == '"' || c == '\\') {
+				put('\\');
+				put(c);
+			} else if(c < 0x20) {
+				switch(c) {
+				case '\n':	put('\\'); put('n'); break;
+				case '\r':	put('\\'); put('r'); break;
+				case '\t':	put('\\'); put('t'); break;
+				case '\b':	put('\\'); put('b'); break;
+				case '\f':	put('\\'); put('f'); break;
+				default:	unicode(c); break;
+				}
+			} else if(c < 0x80) {
+				put(c);
+			} else if(c < 0x800) {
+				put(0xc0 | (c >> 6));
+				put(0x80 | (c & 0x3f));
+			} else if(Character.isHighSurrogate(c)) {
+				high = c;
+			} else if(Character.isLowSurrogate(c)) {
+				unicode(c);	// A lone surrogate cannot be encoded in UTF-8.
+			} else {
+				put(0xe0 | (c >> 12));
+				put(0x80 | ((c >> 6) & 0x3f));
+				put(0x80 | (c & 0x3f));
+			}
+		}
+
+		private void endOfText() throws IOException {
+			if(high != 0) {
+				unicode(high);
+				high = 0;
+			}
+		}
+
+		private void unicode(char c) throws IOException {
+			put('\\');
+			put('u');
+			put(HEX[(c >> 12) & 0xf]);
+			put(HEX[(c >> 8) & 0xf]);
+			put(HEX[(c >> 4) & 0xf]);
+			put(HEX[c & 0xf]);
+		}
+
+		private void put(int b) throws IOException {
+			if(pos == buf.length) flush();
+			buf[pos++] = (byte)b;
+			count++;
+		}
+
+		void flush() throws IOException {
+			if(out != null && pos > 0) out.write(buf, 0, pos);
+			pos = 0;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client-side cache of statement results for deterministic, read-only statements.
+ * A result is keyed by the normalized code, the kind the statement runs with and a scope given by the caller,
+ * e.g. the name of the dataset and its version. Entries are evicted in LRU order when the cache is full
+ * and expire after the TTL. Only successful results are stored. The cache keeps its own copy of a result
+ * and returns a new copy on every hit, so changing a returned result does not change the cache.
+ * The cache is opt-in: it is used only by LivyInteractiveClient.submitCachedStatement().
+ * All the methods are thread-safe.
+ */
+public class StatementCache {
+
+	private static class CachedResult {
+		final StatementResult result;
+		final long expiresAt;
+
+		CachedResult(StatementResult result, long expiresAt) {
+			this.result = result;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int maxEntries;
+	private final long ttl;
+	private final LinkedHashMap<String, CachedResult> entries;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	/**
+	 * Creates a cache.
+	 * @param maxEntries Maximum number of results
+	 * @param ttl Time to live of a result in milliseconds
+	 */
+	public StatementCache(int maxEntries, long ttl) {
+		if(maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive.");
+		if(ttl <= 0) throw new IllegalArgumentException("ttl must be positive.");
+		this.maxEntries = maxEntries;
+		this.ttl = ttl;
+		entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+				if(size() <= StatementCache.this.maxEntries) return false;
+				evictionCount++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Gets a cached result.
+	 * @param scope Scope given by the caller, or null
+	 * @param kind Kind the statement runs with
+	 * @param code Statement code
+	 * @return Copy of the result, or null if not cached or expired
+	 */
+	public synchronized StatementResult get(String scope, SessionKind kind, String code) {
+		String key = key(scope, kind, code);
+		CachedResult e = entries.get(key);
+		if(e != null && e.expiresAt <= System.currentTimeMillis()) {
+			entries.remove(key);
+			evictionCount++;
+			e = null;
+		}
+		if(e == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return e.result.copy();
+	}
+
+	/**
+	 * Stores a result. Results other than an available statement with the "ok" status are ignored.
+	 * @param scope Scope given by the caller, or null
+	 * @param kind Kind the statement runs with
+	 * @param code Statement code
+	 * @param result Result of the statement. A copy is stored.
+	 * @return true if stored
+	 */
+	public synchronized boolean put(String scope, SessionKind kind, String code, StatementResult result) {
+		if(StatementResult.STATE_AVAILABLE.equals(result.getState()) == false || "ok".equals(result.getStatus()) == false) {
+			return false;
+		}
+		entries.put(key(scope, kind, code), new CachedResult(result.copy(), System.currentTimeMillis() + ttl));
+		return true;
+	}
+
+	/**
+	 * Removes a result.
+	 * @param scope Scope given by the caller, or null
+	 * @param kind Kind the statement runs with
+	 * @param code Statement code
+	 */
+	public synchronized void invalidate(String scope, SessionKind kind, String code) {
+		entries.remove(key(scope, kind, code));
+	}
+
+	/**
+	 * Removes all the results of the scope, e.g. when the underlying data is updated.
+	 * @param scope Scope given by the caller, or null
+	 */
+	public synchronized void invalidateScope(String scope) {
+		String prefix = (scope == null ? "" : scope) + '\0';
+		Iterator<String> it = entries.keySet().iterator();
+		while(it.hasNext()) {
+			if(it.next().startsWith(prefix)) it.remove();
+		}
+	}
+
+	/**
+	 * Removes all the results.
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Gets the number of results removed because the cache was full or they expired.
+	 * @return Number of evictions
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Gets the ratio of hits to all lookups.
+	 * @return Hit rate between 0 and 1
+	 */
+	public synchronized double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (double)hitCount / total;
+	}
+
+	/**
+	 * Normalizes the code so that the differences in line endings, trailing spaces and blank lines
+	 * at both ends do not make different keys. Spaces inside a line are kept since they can be part of a literal.
+	 * @param code Statement code
+	 * @return Normalized code
+	 */
+	public static String normalize(String code) {
+		StringBuilder sb = new StringBuilder(code.length());
+		for(String line : code.split("\r\n|\r|\n")) {
+			int end = line.length();
+			while(end > 0 && Character.isWhitespace(line.charAt(end - 1))) end--;
+			if(end == 0 && sb.length() == 0) continue;
+			sb.append(line, 0, end).append('\n');
+		}
+		int len = sb.length();
+		while(len > 0 && sb.charAt(len - 1) == '\n') len--;
+		sb.setLength(len);
+		return sb.toString();
+	}
+
+	private static String key(String scope, SessionKind kind, String code) {
+		return (scope == null ? "" : scope) + '\0' + kind + '\0' + normalize(code);
+	}
+}
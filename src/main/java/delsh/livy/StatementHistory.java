@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded history of statement results of a session.
+ * The latest results are kept in a ring buffer bounded by the number of results and by an estimate
+ * of their size in bytes. Outputs larger than the compression threshold are kept gzip-compressed.
+ * The results pushed out of the buffer are dropped, or written to a spill file when a spill
+ * directory is set; a table output is not written to the spill file. A result is looked up by its
+ * statement id in constant time.
+ * All the methods are thread-safe.
+ */
+public class StatementHistory {
+
+	public static final int DEFAULT_CAPACITY = 1000;
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+	public static final int DEFAULT_COMPRESS_THRESHOLD = 64 * 1024;
+
+	private static class Record {
+		final int id;
+		final String state;
+		final int executionCount;
+		final String status;
+		final String statement;
+		final SessionKind kind;
+		final String output;
+		final byte[] compressed;
+		// A spilled output stays in its mapped file instead of being compressed.
+		final OutputBuffer buffer;
+		final ColumnarTable table;
+		final long bytes;
+
+		Record(StatementResult r, int compressThreshold) {
+			id = r.getId();
+			state = r.getState();
+			executionCount = r.getExecutionCount();
+			status = r.getStatus();
+			statement = r.getStatement();
+			kind = r.getKind();
+			table = r.getTable();
+			long tableBytes = (table != null) ? 8L * table.getRowCount() * table.getColumnCount() : 0;
+			OutputBuffer b = r.getOutputBuffer();
+			if(b != null && b.isSpilled()) {
+				buffer = b;
+				compressed = null;
+				output = null;
+				bytes = 64 + chars(statement) * 2 + tableBytes;
+				return;
+			}
+			buffer = null;
+			String out = r.getOutput();
+			if(compressThreshold > 0 && out != null && out.length() >= compressThreshold) {
+				compressed = gzip(out);
+				output = null;
+			} else {
+				compressed = null;
+				output = out;
+			}
+			bytes = 64 + chars(statement) * 2 + (compressed != null ? compressed.length : chars(output) * 2) + tableBytes;
+		}
+
+		StatementResult toResult() {
+			StatementResult r;
+			if(buffer != null) {
+				r = new StatementResult(id, state, executionCount, status, buffer, statement);
+			} else {
+				r = new StatementResult(id, state, executionCount, status, (compressed != null) ? gunzip(compressed) : output, statement);
+			}
+			r.setTable(table);
+			r.setKind(kind);
+			return r;
+		}
+	}
+
+	private final int capacity;
+	private final long maxBytes;
+	private final int compressThreshold;
+	private final File spillDir;
+	private final ArrayDeque<Record> ring = new ArrayDeque<Record>();
+	private final HashMap<Integer, Record> index = new HashMap<Integer, Record>();
+	private long bytes = 0;
+	private RandomAccessFile spill = null;
+	private File spillFile = null;
+	private final HashMap<Integer, Long> spillIndex = new HashMap<Integer, Long>();
+	private long droppedCount = 0;
+
+	/**
+	 * Creates a history with the default bounds and no spill file.
+	 */
+	public StatementHistory() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_BYTES, DEFAULT_COMPRESS_THRESHOLD, null);
+	}
+
+	/**
+	 * Creates a history.
+	 * @param capacity Maximum number of results kept in memory
+	 * @param maxBytes Maximum estimated size in bytes of the results kept in memory
+	 * @param compressThreshold Outputs of this number of characters or more are compressed. 0 disables compression.
+	 * @param spillDir Directory of the spill file for the results pushed out of memory, or null to drop them
+	 */
+	public StatementHistory(int capacity, long maxBytes, int compressThreshold, File spillDir) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+		this.capacity = capacity;
+		this.maxBytes = maxBytes;
+		this.compressThreshold = compressThreshold;
+		this.spillDir = spillDir;
+	}
+
+	/**
+	 * Adds a result. The oldest results are pushed out when the bounds are exceeded,
+	 * but the newest result always stays in memory.
+	 * @param result Statement result
+	 */
+	public synchronized void add(StatementResult result) {
+		Record r = new Record(result, compressThreshold);
+		Record old = index.put(r.id, r);
+		spillIndex.remove(r.id);
+		if(old != null) {
+			ring.remove(old);
+			bytes -= old.bytes;
+		}
+		ring.addLast(r);
+		bytes += r.bytes;
+		while(ring.size() > 1 && (ring.size() > capacity || bytes > maxBytes)) {
+			Record e = ring.pollFirst();
+			index.remove(e.id);
+			bytes -= e.bytes;
+			evict(e);
+		}
+	}
+
+	/**
+	 * Gets the result of the statement.
+	 * @param statementId Statement id
+	 * @return Result, or null if it is not in the history
+	 */
+	public synchronized StatementResult get(int statementId) {
+		Record r = index.get(statementId);
+		if(r != null) return r.toResult();
+		Long offset = spillIndex.get(statementId);
+		if(offset == null) return null;
+		try {
+			return readSpill(offset);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Gets the results kept in memory in the order they were added. Spilled results are not included.
+	 * @return Copy of the results
+	 */
+	public synchronized List<StatementResult> getResults() {
+		List<StatementResult> list = new ArrayList<StatementResult>(ring.size());
+		for(Record r : ring) {
+			list.add(r.toResult());
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the number of results kept in memory.
+	 * @return Number of results
+	 */
+	public synchronized int size() {
+		return ring.size();
+	}
+
+	/**
+	 * Gets the estimated size in bytes of the results kept in memory.
+	 * @return Size in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getSpilledCount() {
+		return spillIndex.size();
+	}
+
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * Removes all the results and deletes the spill file.
+	 */
+	public synchronized void clear() {
+		ring.clear();
+		index.clear();
+		bytes = 0;
+		spillIndex.clear();
+		if(spill != null) {
+			try {
+				spill.close();
+			} catch(IOException e) {
+				// The file is deleted anyway.
+			}
+			spillFile.delete();
+			spill = null;
+			spillFile = null;
+		}
+	}
+
+	private void evict(Record r) {
+		if(spillDir == null) {
+			droppedCount++;
+			return;
+		}
+		try {
+			if(spill == null) {
+				spillFile = File.createTempFile("livy-history-", ".bin", spillDir);
+				spillFile.deleteOnExit();
+				spill = new RandomAccessFile(spillFile, "rw");
+			}
+			long offset = spill.length();
+			spill.seek(offset);
+			spill.writeInt(r.id);
+			writeString(r.state);
+			spill.writeInt(r.executionCount);
+			writeString(r.status);
+			writeString(r.statement);
+			writeString((r.kind != null) ? r.kind.toString() : null);
+			spill.writeBoolean(r.compressed != null);
+			if(r.buffer != null) {
+				writeStream(r.buffer.openStream());
+			} else {
+				byte[] out = (r.compressed != null) ? r.compressed : bytesOf(r.output);
+				spill.writeInt(out == null ? -1 : out.length);
+				if(out != null) spill.write(out);
+			}
+			spillIndex.put(r.id, offset);
+		} catch(IOException e) {
+			droppedCount++;
+		}
+	}
+
+	private StatementResult readSpill(long offset) throws IOException {
+		spill.seek(offset);
+		int id = spill.readInt();
+		String state = readString();
+		int ec = spill.readInt();
+		String status = readString();
+		String statement = readString();
+		String kind = readString();
+		boolean compressed = spill.readBoolean();
+		byte[] out = readBytes();
+		String output = (out == null) ? null : compressed ? gunzip(out) : new String(out, StandardCharsets.UTF_8);
+		StatementResult r = new StatementResult(id, state, ec, status, output, statement);
+		if(kind != null) r.setKind(SessionKind.getEnum(kind));
+		return r;
+	}
+
+	private void writeString(String s) throws IOException {
+		byte[] b = bytesOf(s);
+		spill.writeInt(b == null ? -1 : b.length);
+		if(b != null) spill.write(b);
+	}
+
+	/**
+	 * Copies a large output without building it in the heap. The length is written after the data.
+	 */
+	private void writeStream(InputStream in) throws IOException {
+		long lengthAt = spill.getFilePointer();
+		spill.writeInt(0);
+		byte[] buf = new byte[8192];
+		long total = 0;
+		int n;
+		while((n = in.read(buf)) != -1) {
+			spill.write(buf, 0, n);
+			total += n;
+		}
+		if(total > Integer.MAX_VALUE) throw new IOException("Output is too large to be spilled.");
+		long end = spill.getFilePointer();
+		spill.seek(lengthAt);
+		spill.writeInt((int)total);
+		spill.seek(end);
+	}
+
+	private String readString() throws IOException {
+		byte[] b = readBytes();
+		return (b == null) ? null : new String(b, StandardCharsets.UTF_8);
+	}
+
+	private byte[] readBytes() throws IOException {
+		int len = spill.readInt();
+		if(len < 0) return null;
+		byte[] b = new byte[len];
+		spill.readFully(b);
+		return b;
+	}
+
+	private static byte[] bytesOf(String s) {
+		return (s == null) ? null : s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int chars(String s) {
+		return (s == null) ? 0 : s.length();
+	}
+
+	private static byte[] gzip(String s) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+			out.write(s.getBytes(StandardCharsets.UTF_8));
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bos.toByteArray();
+	}
+
+	private static String gunzip(byte[] data) {
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length * 4);
+			byte[] buf = new byte[8192];
+			int n;
+			while((n = in.read(buf)) != -1) bos.write(buf, 0, n);
+			return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submits statements to one interactive session back-to-back without waiting for each result.
+ * Livy server queues the statements of a session and runs them one by one, so the client does not
+ * need a round trip between consecutive statements. The statements are posted in the order of
+ * submit() calls, and their futures complete in the same order.
+ * At most capacity statements can be outstanding; submit() blocks when the pipeline is full.
+ * A future completes exceptionally if its statement cannot be posted or monitored.
+ */
+public class StatementPipeline implements Closeable {
+
+	private final LivyInteractiveClient client;
+	private final InteractiveSession session;
+	private final PollingPolicy policy;
+	private final int capacity;
+	private final Semaphore permits;
+	private final Object postLock = new Object();
+	// Statements whose futures are not completed yet, in the order of submission. Also guards draining and closed.
+	private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+	// Set while a thread completes the futures at the head of pending, so that they complete one after another.
+	private boolean draining = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a pipeline.
+	 * @param client Client used for submitting and monitoring the statements
+	 * @param session Session that runs the statements
+	 * @param capacity Maximum number of outstanding statements
+	 * @param policy Policy for monitoring the statements
+	 */
+	public StatementPipeline(LivyInteractiveClient client, InteractiveSession session, int capacity, PollingPolicy policy) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+		this.client = client;
+		this.session = session;
+		this.capacity = capacity;
+		this.policy = policy;
+		permits = new Semaphore(capacity);
+	}
+
+	/**
+	 * Submits a statement, waiting while the pipeline is full.
+	 * @param statement Statement code
+	 * @return Future completed with the result after the results of all the previous statements
+	 * @throws IOException
+	 * @throws LivyException
+	 */
+	public CompletableFuture<StatementResult> submit(String statement) throws IOException, LivyException {
+		try {
+			permits.acquire();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the pipeline.");
+		}
+		return post(statement);
+	}
+
+	/**
+	 * Submits a statement if the pipeline has room within the timeout.
+	 * @param statement Statement code
+	 * @param timeout Maximum time in milliseconds to wait for room
+	 * @return Future of the result, or null if the pipeline is still full
+	 * @throws IOException
+	 * @throws LivyException
+	 */
+	public CompletableFuture<StatementResult> trySubmit(String statement, long timeout) throws IOException, LivyException {
+		try {
+			if(permits.tryAcquire(timeout, TimeUnit.MILLISECONDS) == false) return null;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the pipeline.");
+		}
+		return post(statement);
+	}
+
+	/**
+	 * Gets the number of statements whose futures are not completed yet.
+	 * @return Number of outstanding statements
+	 */
+	public int getOutstandingCount() {
+		return capacity - permits.availablePermits();
+	}
+
+	public InteractiveSession getSession() {
+		return session;
+	}
+
+	/**
+	 * Closes the pipeline. The futures not completed yet complete exceptionally.
+	 * The statements already posted keep running on livy server.
+	 */
+	@Override
+	public void close() {
+		List<Pending> dropped;
+		synchronized(pending) {
+			closed = true;
+			dropped = new ArrayList<Pending>(pending);
+			pending.clear();
+		}
+		for(Pending p : dropped) {
+			permits.release();
+			p.future.completeExceptionally(new LivyException("Pipeline is closed."));
+		}
+	}
+
+	private CompletableFuture<StatementResult> post(String statement) throws IOException, LivyException {
+		final Pending p = new Pending();
+
+		// Livy numbers the statements in the order of arrival, so they are posted one at a time.
+		// postLock is held across the POST, so the poller thread completes the futures without it.
+		synchronized(postLock) {
+			synchronized(pending) {
+				if(closed) {
+					permits.release();
+					p.future.completeExceptionally(new LivyException("Pipeline is closed."));
+					return p.future;
+				}
+				pending.add(p);
+			}
+			try {
+				client.submitStatement(session, statement, policy, new StatementResultListener() {
+					@Override
+					public void update(StatementResult result) {
+						finish(p, result, null);
+					}
+
+					@Override
+					public void onError(Exception cause) {
+						finish(p, null, cause);
+					}
+				});
+			} catch(IOException | LivyException | RuntimeException e) {
+				finish(p, null, e);
+				throw e;
+			}
+		}
+		return p.future;
+	}
+
+	/**
+	 * Records the outcome of a statement, and completes the futures at the head that have their outcome.
+	 * A future is completed only after all the dependent actions of the previous one have run.
+	 */
+	private void finish(Pending p, StatementResult result, Exception cause) {
+		synchronized(pending) {
+			p.result = result;
+			p.cause = cause;
+			p.ready = true;
+			if(draining) return;
+			draining = true;
+		}
+		while(true) {
+			Pending head;
+			synchronized(pending) {
+				head = pending.peek();
+				if(head == null || head.ready == false) {
+					draining = false;
+					return;
+				}
+				pending.poll();
+			}
+			// Given back before the dependent actions run, so that they can submit the next statement.
+			permits.release();
+			if(head.cause == null) {
+				head.future.complete(head.result);
+			} else {
+				head.future.completeExceptionally(head.cause);
+			}
+		}
+	}
+
+	private static class Pending {
+		final CompletableFuture<StatementResult> future = new CompletableFuture<StatementResult>();
+		StatementResult result = null;
+		Exception cause = null;
+		boolean ready = false;
+	}
+}
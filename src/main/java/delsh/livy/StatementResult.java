@@ -16,6 +16,12 @@
  */
 package delsh.livy;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Represents the result of statement.
  *
@@ -24,13 +30,19 @@ public class StatementResult {
 
 	public static final String STATE_RUNNING = "running";
 	public static final String STATE_AVAILABLE = "available";
+	public static final String STATE_ERROR = "error";
+	public static final String STATE_CANCELLED = "cancelled";
 	
 	private int id = 0;
 	private int execution_count = 0;
 	private String state = StatementResult.STATE_RUNNING;
 	private String status = "ok";
 	private String output = "null";
+	// Set instead of output when the output was read from livy server, so a large one is not built as a string.
+	private OutputBuffer buffer = null;
+	private ColumnarTable table = null;
 	private String statement = null;
+	private SessionKind kind = null;
 	
 	public StatementResult(int num, String st, int ec, String stts, String out, String stmt) {
 		id = num;
@@ -41,17 +53,97 @@ public class StatementResult {
 		statement = stmt;
 	}
 
+	StatementResult(int num, String st, int ec, String stts, OutputBuffer out, String stmt) {
+		this(num, st, ec, stts, (String)null, stmt);
+		buffer = out;
+	}
+
 	public int getId() { return id; }
 	public int getExecutionCount() { return execution_count; }
 	public String getState() { return state; }
 	public String getStatus() { return status; }
-	public String getOutput() { return output; }
+	public String getOutput() { return (buffer != null) ? buffer.toString() : output; }
 	public String getStatement() { return statement; }
 
 	public void setState(String st) { state = st; }
 	public void setStatus(String stts) { status = stts; }
-	public void setOutput(String out) { output = out; }
+	public void setOutput(String out) { output = out; buffer = null; }
 	public void setExecutionCount(int ec) { execution_count = ec; }
+
+	/**
+	 * Gets the number of characters of the output.
+	 * @return Length, or 0 if there is no output
+	 */
+	public long getOutputLength() {
+		if(buffer != null) return buffer.length();
+		return (output != null) ? output.length() : 0;
+	}
+
+	/**
+	 * Gets the output without building a string. A large output is read from a memory-mapped file.
+	 * @return Output, or null if there is no output
+	 */
+	public CharSequence getOutputChars() {
+		return (buffer != null) ? buffer.asCharSequence() : output;
+	}
+
+	/**
+	 * Opens a reader of the output.
+	 * @return Reader, or null if there is no output
+	 */
+	public Reader getOutputReader() {
+		if(buffer != null) return buffer.openReader();
+		return (output != null) ? new StringReader(output) : null;
+	}
+
+	/**
+	 * Opens a stream of the output encoded in UTF-8.
+	 * @return Input stream, or null if there is no output
+	 */
+	public InputStream getOutputStream() {
+		if(buffer != null) return buffer.openStream();
+		return (output != null) ? new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)) : null;
+	}
+
+	/**
+	 * Gets the table returned as application/json output, e.g. by a SQL statement.
+	 * @return Table, or null if the output is not a table
+	 */
+	public ColumnarTable getTable() {
+		return table;
+	}
+
+	void setTable(ColumnarTable t) {
+		table = t;
+	}
+
+	/**
+	 * Gets the kind given to the statement when it was submitted.
+	 * @return Statement kind, or null if the statement ran with the kind of the session
+	 */
+	public SessionKind getKind() {
+		return kind;
+	}
+
+	void setKind(SessionKind k) {
+		kind = k;
+	}
+
+	OutputBuffer getOutputBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Copies the result. The output buffer and the table are shared since they are not changed after being read.
+	 * @return Copy
+	 */
+	StatementResult copy() {
+		StatementResult c = new StatementResult(id, state, execution_count, status, output, statement);
+		c.buffer = buffer;
+		c.table = table;
+		c.kind = kind;
+		return c;
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
@@ -21,4 +21,12 @@ package delsh.livy;
  */
 public interface StatementResultListener {
 	public void update(StatementResult result);
+
+	/**
+	 * Called instead of update() when the statement is no longer monitored before it completes.
+	 * @param cause IOException if the status could not be fetched after retries,
+	 * or CancellationException if the monitoring was cancelled or the poller was closed
+	 */
+	public default void onError(Exception cause) {
+	}
 }
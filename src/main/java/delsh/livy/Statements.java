@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+/**
+ * A statement returned from livy server.
+ */
+class Statements {
+	public int id;
+	public String state;
+	public Output output;
+	// Added from HDI 3.6 (Spark 2.2.)
+	public String code; // "spark"
+	// Added from HDI 3.6 (Spark 2.2.)
+	public float progress;
+
+	/**
+	 * Checks if the statement reaches a final state.
+	 * @return true if the statement is completed
+	 */
+	boolean isCompleted() {
+		if(state == null) return false;
+		if(state.equals(StatementResult.STATE_AVAILABLE)) return output != null;
+		return state.equals(StatementResult.STATE_ERROR) || state.equals(StatementResult.STATE_CANCELLED);
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Decodes the application/json output {"schema": {"fields": [...]}, "data": [[...], ...]} into a ColumnarTable.
+ * The rows are read with the streaming parser straight into the columns. When data comes before schema,
+ * the rows are buffered as a tree first.
+ */
+class TableDeserializer extends JsonDeserializer<ColumnarTable> {
+
+	@Override
+	public ColumnarTable deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+		if(p.getCurrentToken() != JsonToken.START_OBJECT) {
+			p.skipChildren();
+			return null;
+		}
+		List<ColumnarTable.Column> columns = null;
+		JsonNode pending = null;
+		int rows = 0;
+		while(p.nextToken() == JsonToken.FIELD_NAME) {
+			String field = p.getCurrentName();
+			JsonToken t = p.nextToken();
+			if(field.equals("schema") && t == JsonToken.START_OBJECT) {
+				columns = readSchema(p);
+			} else if(field.equals("data") && t == JsonToken.START_ARRAY) {
+				if(columns != null) {
+					rows = readRows(p, columns);
+				} else {
+					pending = p.readValueAsTree();
+				}
+			} else {
+				p.skipChildren();
+			}
+		}
+		if(columns == null) return null;
+		if(pending != null) {
+			try (JsonParser tp = pending.traverse(p.getCodec())) {
+				tp.nextToken();
+				rows = readRows(tp, columns);
+			}
+		}
+		return new ColumnarTable(columns, rows);
+	}
+
+	private static List<ColumnarTable.Column> readSchema(JsonParser p) throws IOException {
+		List<ColumnarTable.Column> columns = new ArrayList<ColumnarTable.Column>();
+		while(p.nextToken() == JsonToken.FIELD_NAME) {
+			String field = p.getCurrentName();
+			if(p.nextToken() != JsonToken.START_ARRAY || field.equals("fields") == false) {
+				p.skipChildren();
+				continue;
+			}
+			while(p.nextToken() == JsonToken.START_OBJECT) {
+				String name = null;
+				String type = null;
+				while(p.nextToken() == JsonToken.FIELD_NAME) {
+					String f = p.getCurrentName();
+					JsonToken t = p.nextToken();
+					if(f.equals("name") && t == JsonToken.VALUE_STRING) {
+						name = p.getText();
+					} else if(f.equals("type") && t == JsonToken.VALUE_STRING) {
+						type = p.getText();
+					} else {
+						// A complex type is an object, and it is decoded as json text.
+						p.skipChildren();
+					}
+				}
+				columns.add(ColumnarTable.newColumn(name != null ? name : "_c" + columns.size(), ColumnarTable.ColumnType.fromSpark(type)));
+			}
+		}
+		return columns;
+	}
+
+	private static int readRows(JsonParser p, List<ColumnarTable.Column> columns) throws IOException {
+		int row = 0;
+		while(p.nextToken() == JsonToken.START_ARRAY) {
+			int i = 0;
+			while(p.nextToken() != JsonToken.END_ARRAY) {
+				if(i < columns.size()) {
+					readValue(p, columns.get(i), row);
+				} else {
+					p.skipChildren();
+				}
+				i++;
+			}
+			// Missing values at the end of the row are null.
+			for(; i < columns.size(); i++) {
+				columns.get(i).nulls.set(row);
+				setDefault(columns.get(i), row);
+			}
+			row++;
+		}
+		return row;
+	}
+
+	private static void readValue(JsonParser p, ColumnarTable.Column c, int row) throws IOException {
+		JsonToken t = p.getCurrentToken();
+		boolean number = (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT);
+		switch(c.getType()) {
+		case INT:
+			if(number) {
+				((ColumnarTable.IntColumn)c).set(row, p.getIntValue());
+				return;
+			}
+			break;
+		case LONG:
+			if(number) {
+				((ColumnarTable.LongColumn)c).set(row, p.getLongValue());
+				return;
+			}
+			break;
+		case DOUBLE:
+			if(number) {
+				((ColumnarTable.DoubleColumn)c).set(row, p.getDoubleValue());
+				return;
+			}
+			if(t == JsonToken.VALUE_STRING) {
+				// NaN and Infinity are written as strings.
+				try {
+					((ColumnarTable.DoubleColumn)c).set(row, Double.parseDouble(p.getText()));
+					return;
+				} catch(NumberFormatException e) {
+					break;
+				}
+			}
+			break;
+		case BOOLEAN:
+			if(t == JsonToken.VALUE_TRUE || t == JsonToken.VALUE_FALSE) {
+				((ColumnarTable.BooleanColumn)c).set(row, t == JsonToken.VALUE_TRUE);
+				return;
+			}
+			break;
+		default:
+			if(t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+				((ColumnarTable.StringColumn)c).set(row, p.readValueAsTree().toString());
+				return;
+			}
+			if(t != JsonToken.VALUE_NULL) {
+				((ColumnarTable.StringColumn)c).set(row, p.getText());
+				return;
+			}
+		}
+		p.skipChildren();
+		c.nulls.set(row);
+		setDefault(c, row);
+	}
+
+	/**
+	 * Grows the backing array for a null value.
+	 */
+	private static void setDefault(ColumnarTable.Column c, int row) {
+		switch(c.getType()) {
+		case INT:		((ColumnarTable.IntColumn)c).set(row, 0); break;
+		case LONG:		((ColumnarTable.LongColumn)c).set(row, 0); break;
+		case DOUBLE:	((ColumnarTable.DoubleColumn)c).set(row, 0); break;
+		case STRING:	((ColumnarTable.StringColumn)c).setNull(row); break;
+		default:		break;
+		}
+	}
+}
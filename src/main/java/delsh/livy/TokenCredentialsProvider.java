@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package delsh.livy;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Credentials provider for bearer tokens such as the ones issued by a gateway in front of livy server.
+ * The token is cached and fetched again from the supplier when livy server returns 401.
+ */
+public class TokenCredentialsProvider implements CredentialsProvider {
+
+	private final Supplier<String> supplier;
+	private volatile String authorization = null;
+
+	/**
+	 * Creates a provider with a fixed token.
+	 * @param token Bearer token
+	 */
+	public TokenCredentialsProvider(String token) {
+		this(() -> token);
+	}
+
+	/**
+	 * Creates a provider that obtains tokens from the supplier.
+	 * @param supplier Supplier called for the first request and after every 401 response
+	 */
+	public TokenCredentialsProvider(Supplier<String> supplier) {
+		this.supplier = supplier;
+	}
+
+	@Override
+	public String getAuthorization() throws IOException {
+		String a = authorization;
+		if(a == null) {
+			synchronized(this) {
+				if(authorization == null) authorization = fetch();
+				a = authorization;
+			}
+		}
+		return a;
+	}
+
+	@Override
+	public synchronized boolean refresh() throws IOException {
+		String old = authorization;
+		authorization = fetch();
+		return authorization.equals(old) == false;
+	}
+
+	private String fetch() throws IOException {
+		String token = supplier.get();
+		if(token == null) throw new IOException("No token is available.");
+		return "Bearer " + token;
+	}
+}
@@ -38,28 +38,6 @@ public class InteractiveSample2 {
 		}
 	}
 
-	// Add escape sequence for double quote character in the statement.
-	private String checkStatement(String statement) {
-		StringBuilder sb = new StringBuilder();
-		int start = 0, end;
-		String buf = statement;
-		
-		while(buf.length() > 0) {
-			end = buf.indexOf("\"");
-			if(end < 0) {
-				sb.append(buf);
-				break;
-			}
-			sb.append(buf.substring(start, end));
-			sb.append("\\");
-			sb.append("\"");
-			buf = buf.substring(end + 1);
-			start = 0;
-		}
-
-		return sb.toString();
-	}	
-	
 	public void run() {
 		InteractiveJobParameters param = new InteractiveJobParameters(SessionKind.SPARK);
 		
@@ -98,7 +76,7 @@ public class InteractiveSample2 {
 			}catch(IOException e){
 				System.out.println("Input Failure: " + e.getMessage());
 			}
-			String statement = checkStatement(input);
+			String statement = input;
 			
 			System.out.println("Your input is [" + statement + "]");
 			if(statement.equals("exit")) {
@@ -0,0 +1,229 @@
+package org.kojish.spark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import delsh.livy.AsyncLivyBatchClient;
+import delsh.livy.AsyncLivyInteractiveClient;
+import delsh.livy.BatchJobParameters;
+import delsh.livy.BatchSession;
+import delsh.livy.BroadcastResult;
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.InteractiveSession;
+import delsh.livy.LivyBatchClient;
+import delsh.livy.LivyInteractiveClient;
+import delsh.livy.LivyPoller;
+import delsh.livy.StatementResult;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the futures of the async clients when the result can not be polled,
+ * and for the combined result of broadcast().
+ */
+public class AsyncClientTest
+    extends TestCase
+{
+    private static final String WAITING = "{\"id\":0,\"state\":\"waiting\"}";
+
+    private static Throwable failureOf( CompletableFuture<?> future ) throws Exception
+    {
+        try
+        {
+            future.get( 10, TimeUnit.SECONDS );
+        }
+        catch ( ExecutionException e )
+        {
+            return e.getCause();
+        }
+        catch ( CancellationException e )
+        {
+            return e;
+        }
+        fail( "The future completed normally." );
+        return null;
+    }
+
+    private static ScriptedTransport failingPolls()
+    {
+        return new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) ) return ScriptedTransport.ok( WAITING );
+            if ( path.equals( "/sessions/0" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"idle\"}" );
+            throw new IOException( "down" );
+        } );
+    }
+
+    public void testStatementFailsWhenPollingFails() throws Exception
+    {
+        LivyPoller poller = new LivyPoller( 1 );
+        poller.setMaxFailures( 2 );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, failingPolls() );
+              AsyncLivyInteractiveClient async = new AsyncLivyInteractiveClient( client ) )
+        {
+            client.setPoller( poller );
+            InteractiveSession s = client.attachSession( 0 );
+            CompletableFuture<StatementResult> r = async.submitStatement( s, "1", new FixedPollingPolicy( 10 ) );
+            assertTrue( failureOf( r ) instanceof IOException );
+        }
+        finally
+        {
+            poller.close();
+        }
+    }
+
+    public void testStatementFailsWhenSessionIsDeleted() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( path.equals( "/sessions/0" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"idle\"}" );
+            return ScriptedTransport.ok( WAITING );
+        } );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t );
+              AsyncLivyInteractiveClient async = new AsyncLivyInteractiveClient( client ) )
+        {
+            InteractiveSession s = client.attachSession( 0 );
+            CompletableFuture<StatementResult> r = async.submitStatement( s, "1", new FixedPollingPolicy( 1000 ) );
+            while ( t.requests.contains( "POST /sessions/0/statements" ) == false )
+            {
+                Thread.sleep( 10 );
+            }
+            async.deleteSession( s ).get( 10, TimeUnit.SECONDS );
+            assertTrue( failureOf( r ) instanceof CancellationException );
+        }
+    }
+
+    public void testStatementFailsWhenClientIsClosed() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> ScriptedTransport.ok( WAITING ) );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            InteractiveSession s = client.attachSession( 0 );
+            AsyncLivyInteractiveClient async = new AsyncLivyInteractiveClient( client );
+            CompletableFuture<StatementResult> r = async.submitStatement( s, "1", new FixedPollingPolicy( 1000 ) );
+            async.close();
+            assertTrue( failureOf( r ) instanceof CancellationException );
+        }
+    }
+
+    public void testBatchFailsWhenPollingFails() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"starting\"}" );
+            throw new IOException( "down" );
+        } );
+        LivyPoller poller = new LivyPoller( 1 );
+        poller.setMaxFailures( 2 );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t );
+              AsyncLivyBatchClient async = new AsyncLivyBatchClient( client ) )
+        {
+            client.setPoller( poller );
+            CompletableFuture<BatchSession> done = async.createJob( new BatchJobParameters( "app.jar", "Main" ), new FixedPollingPolicy( 10 ) );
+            assertTrue( failureOf( done ) instanceof IOException );
+        }
+        finally
+        {
+            poller.close();
+        }
+    }
+
+    private static List<InteractiveSession> attach( LivyInteractiveClient client, FakeLivy livy, int count ) throws Exception
+    {
+        List<InteractiveSession> sessions = new ArrayList<InteractiveSession>();
+        for ( int i = 0; i < count; i++ )
+        {
+            sessions.add( client.attachSession( livy.createSession() ) );
+        }
+        return sessions;
+    }
+
+    public void testBroadcastRunsOnAllSessions() throws Exception
+    {
+        FakeLivy livy = new FakeLivy();
+        ScriptedTransport t = new ScriptedTransport( livy );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t );
+              AsyncLivyInteractiveClient async = new AsyncLivyInteractiveClient( client ) )
+        {
+            List<InteractiveSession> sessions = attach( client, livy, 3 );
+            BroadcastResult r = async.broadcast( sessions, "x", 10000, new FixedPollingPolicy( 10 ) ).get( 10, TimeUnit.SECONDS );
+            assertTrue( r.isAllSucceeded() );
+            assertEquals( 0, r.getTimedOutCount() );
+            assertTrue( r.getElapsed() < 10000 );
+            for ( int i = 0; i < sessions.size(); i++ )
+            {
+                BroadcastResult.Outcome o = r.getOutcomes().get( i );
+                assertSame( sessions.get( i ), o.getSession() );
+                assertSame( o, r.getOutcome( sessions.get( i ) ) );
+                assertEquals( "out:x", o.getResult().getOutput() );
+                assertTrue( o.getLatency() >= 0 && o.getLatency() <= r.getElapsed() );
+                assertEquals( 1, Collections.frequency( t.requests, "POST /sessions/" + i + "/statements" ) );
+            }
+        }
+    }
+
+    public void testBroadcastReportsMixedOutcomesAtDeadline() throws Exception
+    {
+        final FakeLivy livy = new FakeLivy();
+        livy.setAutoComplete( false );
+        // Session 1 refuses the statement.
+        ScriptedTransport t = new ScriptedTransport( new ScriptedTransport.Handler()
+        {
+            public ScriptedTransport.Reply handle( String method, String path )
+            {
+                return handle( method, path, "" );
+            }
+
+            public ScriptedTransport.Reply handle( String method, String path, String body )
+            {
+                if ( method.equals( "POST" ) && path.equals( "/sessions/1/statements" ) )
+                {
+                    return new ScriptedTransport.Reply( 500, "\"Session is busy.\"" );
+                }
+                return livy.handle( method, path, body );
+            }
+        } );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t );
+              AsyncLivyInteractiveClient async = new AsyncLivyInteractiveClient( client ) )
+        {
+            List<InteractiveSession> sessions = attach( client, livy, 3 );
+            long start = System.currentTimeMillis();
+            CompletableFuture<BroadcastResult> f = async.broadcast( sessions, "x", 1000, new FixedPollingPolicy( 10 ) );
+            Thread.sleep( 100 );
+            livy.complete( 0, 0 );
+            BroadcastResult r = f.get( 10, TimeUnit.SECONDS );
+            assertTrue( r.getElapsed() >= 1000 );
+            assertTrue( r.getElapsed() <= System.currentTimeMillis() - start );
+
+            BroadcastResult.Outcome ok = r.getOutcome( sessions.get( 0 ) );
+            assertTrue( ok.isSucceeded() );
+            assertNull( ok.getError() );
+            assertTrue( ok.getLatency() >= 100 && ok.getLatency() < 1000 );
+
+            BroadcastResult.Outcome failed = r.getOutcome( sessions.get( 1 ) );
+            assertFalse( failed.isSucceeded() );
+            assertFalse( failed.isTimedOut() );
+            assertNull( failed.getResult() );
+            assertNotNull( failed.getError() );
+            assertTrue( failed.getLatency() >= 0 && failed.getLatency() < 1000 );
+
+            BroadcastResult.Outcome late = r.getOutcome( sessions.get( 2 ) );
+            assertTrue( late.isTimedOut() );
+            assertEquals( -1, late.getLatency() );
+            assertNull( late.getResult() );
+
+            assertEquals( 1, r.getSucceededCount() );
+            assertEquals( 1, r.getTimedOutCount() );
+            assertFalse( r.isAllSucceeded() );
+
+            // A completion after the deadline does not change the result.
+            livy.complete( 2, 0 );
+            Thread.sleep( 200 );
+            assertTrue( late.isTimedOut() );
+            assertNull( late.getResult() );
+            assertEquals( 1, r.getSucceededCount() );
+        }
+    }
+}
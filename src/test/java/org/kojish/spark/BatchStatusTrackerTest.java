@@ -0,0 +1,133 @@
+package org.kojish.spark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import delsh.livy.BatchSession;
+import delsh.livy.BatchStatusTracker;
+import delsh.livy.LivyBatchClient;
+import delsh.livy.Session;
+import delsh.livy.SessionEventListener;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for BatchStatusTracker when batches are missing from the listing.
+ */
+public class BatchStatusTrackerTest
+    extends TestCase
+{
+    private static final String EMPTY = "{\"from\":0,\"total\":0,\"sessions\":[]}";
+
+    private static SessionEventListener recorder( final List<String> events )
+    {
+        return new SessionEventListener()
+        {
+            public boolean updateStatus( Session event )
+            {
+                events.add( event.getId() + ":" + event.getState() );
+                return true;
+            }
+
+            public void onError( Exception cause )
+            {
+                events.add( cause.getClass().getSimpleName() );
+            }
+        };
+    }
+
+    public void testRefreshContinuesAfterMissingBatches() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( path.startsWith( "/batches?" ) )
+            {
+                return ScriptedTransport.ok( "{\"from\":0,\"total\":1,\"sessions\":[{\"id\":3,\"state\":\"success\"}]}" );
+            }
+            if ( path.equals( "/batches/1" ) ) return new ScriptedTransport.Reply( 404, "\"Session '1' not found.\"" );
+            if ( path.equals( "/batches/2" ) ) return new ScriptedTransport.Reply( 500, "" );
+            return ScriptedTransport.ok( "{\"id\":4,\"state\":\"dead\"}" );
+        } );
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t );
+              BatchStatusTracker tracker = new BatchStatusTracker( client, 3600000L ) )
+        {
+            for ( int id = 1; id <= 4; id++ )
+            {
+                tracker.track( new BatchSession( id ), event -> {
+                    events.add( event.getId() + ":" + event.getState() );
+                    return true;
+                } );
+            }
+            assertEquals( 4, tracker.refresh() );
+            Collections.sort( events );
+            assertEquals( "[1:" + Session.GONE + ", 3:" + Session.SUCCESS + ", 4:" + Session.DEAD + "]", events.toString() );
+            // Only the batch that failed with 500 is still tracked.
+            assertEquals( 1, tracker.getTrackedCount() );
+        }
+    }
+
+    public void testBatchFailingToBeFetchedIsReported() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( path.startsWith( "/batches?" ) ) return ScriptedTransport.ok( EMPTY );
+            return new ScriptedTransport.Reply( 500, "" );
+        } );
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t );
+              BatchStatusTracker tracker = new BatchStatusTracker( client, 3600000L ) )
+        {
+            tracker.setMaxFailures( 3 );
+            tracker.track( new BatchSession( 1 ), recorder( events ) );
+            tracker.refresh();
+            tracker.refresh();
+            assertTrue( events.isEmpty() );
+            assertEquals( 1, tracker.getTrackedCount() );
+            tracker.refresh();
+            assertEquals( "[" + IOException.class.getSimpleName() + "]", events.toString() );
+            assertEquals( 0, tracker.getTrackedCount() );
+            // The batch is not fetched any more.
+            assertEquals( 0, tracker.refresh() );
+        }
+    }
+
+    public void testCloseReportsTrackedBatches() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> ScriptedTransport.ok( EMPTY ) );
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t ) )
+        {
+            BatchStatusTracker tracker = new BatchStatusTracker( client, 3600000L );
+            tracker.track( new BatchSession( 1 ), recorder( events ) );
+            tracker.track( new BatchSession( 2 ), recorder( events ) );
+            tracker.close();
+            String cancelled = CancellationException.class.getSimpleName();
+            assertEquals( "[" + cancelled + ", " + cancelled + "]", events.toString() );
+            assertEquals( 0, tracker.getTrackedCount() );
+            // A batch tracked after close is reported at once.
+            tracker.track( new BatchSession( 3 ), recorder( events ) );
+            assertEquals( 3, events.size() );
+        }
+    }
+
+    public void testTransientStatesAreNotFinal() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> ScriptedTransport.ok( "{\"from\":0,\"total\":3,\"sessions\":["
+            + "{\"id\":1,\"state\":\"recovering\"},{\"id\":2,\"state\":\"shutting_down\"},{\"id\":3,\"state\":\"killed\"}]}" ) );
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t );
+              BatchStatusTracker tracker = new BatchStatusTracker( client, 3600000L ) )
+        {
+            for ( int id = 1; id <= 3; id++ )
+            {
+                tracker.track( new BatchSession( id ), recorder( events ) );
+            }
+            tracker.refresh();
+            Collections.sort( events );
+            assertEquals( "[1:" + Session.STARTING + ", 2:" + Session.SHUTTING_DOWN + ", 3:" + Session.DEAD + "]", events.toString() );
+            // A batch recovered after livy server restarts, or being shut down, is still tracked.
+            assertEquals( 2, tracker.getTrackedCount() );
+        }
+    }
+}
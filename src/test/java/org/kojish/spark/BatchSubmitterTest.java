@@ -0,0 +1,69 @@
+package org.kojish.spark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import delsh.livy.BatchJobParameters;
+import delsh.livy.BatchSession;
+import delsh.livy.BatchSubmitter;
+import delsh.livy.BatchSubmitterConf;
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.LivyBatchClient;
+import delsh.livy.LivyPoller;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the permits of BatchSubmitter.
+ */
+public class BatchSubmitterTest
+    extends TestCase
+{
+    public void testPermitIsReleasedWhenPollingFails() throws Exception
+    {
+        final AtomicInteger ids = new AtomicInteger();
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) )
+            {
+                return ScriptedTransport.ok( "{\"id\":" + ids.getAndIncrement() + ",\"state\":\"starting\"}" );
+            }
+            throw new IOException( "down" );
+        } );
+        LivyPoller poller = new LivyPoller( 1 );
+        poller.setMaxFailures( 1 );
+        BatchSubmitterConf conf = new BatchSubmitterConf();
+        conf.setMaxInFlight( 1 );
+        conf.setPollingPolicy( new FixedPollingPolicy( 10 ) );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t ) )
+        {
+            client.setPoller( poller );
+            try ( BatchSubmitter submitter = new BatchSubmitter( client, conf ) )
+            {
+                List<CompletableFuture<BatchSession>> futures = submitter.submitAll( Arrays.asList(
+                    new BatchJobParameters( "app.jar", "Main" ), new BatchJobParameters( "app.jar", "Main" ) ) );
+                for ( CompletableFuture<BatchSession> f : futures )
+                {
+                    try
+                    {
+                        f.get( 10, TimeUnit.SECONDS );
+                        fail();
+                    }
+                    catch ( ExecutionException e )
+                    {
+                        assertTrue( e.getCause() instanceof IOException );
+                    }
+                }
+                // The second batch is created only after the permit of the first one is given back.
+                assertEquals( 2, ids.get() );
+            }
+        }
+        finally
+        {
+            poller.close();
+        }
+    }
+}
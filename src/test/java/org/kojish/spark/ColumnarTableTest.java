@@ -0,0 +1,66 @@
+package org.kojish.spark;
+
+import delsh.livy.ColumnarTable;
+import delsh.livy.JsonConverter;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the columnar decoding of table outputs.
+ */
+public class ColumnarTableTest
+    extends TestCase
+{
+    private static final String SCHEMA = "\"schema\":{\"type\":\"struct\",\"fields\":["
+        + "{\"name\":\"id\",\"type\":\"integer\",\"nullable\":false,\"metadata\":{}},"
+        + "{\"name\":\"total\",\"type\":\"long\",\"nullable\":true,\"metadata\":{}},"
+        + "{\"name\":\"ratio\",\"type\":\"double\",\"nullable\":true,\"metadata\":{}},"
+        + "{\"name\":\"flag\",\"type\":\"boolean\",\"nullable\":true,\"metadata\":{}},"
+        + "{\"name\":\"city\",\"type\":\"string\",\"nullable\":true,\"metadata\":{}},"
+        + "{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"elementType\":\"string\"},\"nullable\":true,\"metadata\":{}}]}";
+    private static final String DATA = "\"data\":["
+        + "[1,10000000000,0.5,true,\"Tokyo\",[\"a\"]],"
+        + "[2,null,\"NaN\",false,\"Osaka\",null],"
+        + "[3,7,1.5,null,\"Tokyo\",[]]]";
+
+    private static void check( ColumnarTable t )
+    {
+        assertEquals( 3, t.getRowCount() );
+        assertEquals( 6, t.getColumnCount() );
+
+        ColumnarTable.IntColumn id = (ColumnarTable.IntColumn) t.getColumn( "id" );
+        assertEquals( 3, id.getValues().length );
+        assertEquals( 3, id.get( 2 ) );
+
+        ColumnarTable.LongColumn total = (ColumnarTable.LongColumn) t.getColumn( 1 );
+        assertEquals( 10000000000L, total.get( 0 ) );
+        assertTrue( total.isNull( 1 ) );
+
+        ColumnarTable.DoubleColumn ratio = (ColumnarTable.DoubleColumn) t.getColumn( "ratio" );
+        assertTrue( Double.isNaN( ratio.get( 1 ) ) );
+
+        ColumnarTable.BooleanColumn flag = (ColumnarTable.BooleanColumn) t.getColumn( "flag" );
+        assertTrue( flag.get( 0 ) );
+        assertTrue( flag.isNull( 2 ) );
+
+        ColumnarTable.StringColumn city = (ColumnarTable.StringColumn) t.getColumn( "city" );
+        assertEquals( 2, city.getDictionary().size() );
+        assertEquals( city.getCode( 0 ), city.getCode( 2 ) );
+        assertEquals( "Osaka", city.get( 1 ) );
+
+        ColumnarTable.StringColumn tags = (ColumnarTable.StringColumn) t.getColumn( "tags" );
+        assertEquals( ColumnarTable.ColumnType.STRING, tags.getType() );
+        assertEquals( "[\"a\"]", tags.get( 0 ) );
+        assertNull( tags.get( 1 ) );
+        assertEquals( -1, tags.getCode( 1 ) );
+    }
+
+    public void testDecode() throws Exception
+    {
+        check( JsonConverter.toObject( ColumnarTable.class, "{" + SCHEMA + "," + DATA + "}" ) );
+    }
+
+    public void testDataBeforeSchema() throws Exception
+    {
+        check( JsonConverter.toObject( ColumnarTable.class, "{" + DATA + "," + SCHEMA + "}" ) );
+    }
+}
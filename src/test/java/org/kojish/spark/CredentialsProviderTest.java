@@ -0,0 +1,90 @@
+package org.kojish.spark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import delsh.livy.BasicCredentialsProvider;
+import delsh.livy.CredentialsProvider;
+import delsh.livy.FileCredentialsProvider;
+import delsh.livy.LivyInteractiveClient;
+import delsh.livy.TokenCredentialsProvider;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the credentials providers.
+ */
+public class CredentialsProviderTest
+    extends TestCase
+{
+    public void testBasic()
+    {
+        BasicCredentialsProvider p = new BasicCredentialsProvider( "admin", "secret" );
+        assertEquals( "Basic YWRtaW46c2VjcmV0", p.getAuthorization() );
+    }
+
+    public void testFileIsReloadedOnRefresh() throws Exception
+    {
+        Path file = Files.createTempFile( "livy", ".cred" );
+        try
+        {
+            Files.write( file, "admin:secret\n".getBytes( StandardCharsets.UTF_8 ) );
+            FileCredentialsProvider p = new FileCredentialsProvider( file, Long.MAX_VALUE );
+            assertEquals( "Basic YWRtaW46c2VjcmV0", p.getAuthorization() );
+
+            Files.write( file, "admin:rotated\n".getBytes( StandardCharsets.UTF_8 ) );
+            Files.setLastModifiedTime( file, FileTime.fromMillis( System.currentTimeMillis() + 10000 ) );
+            assertEquals( "Basic YWRtaW46c2VjcmV0", p.getAuthorization() );
+            assertTrue( p.refresh() );
+            assertEquals( BasicCredentialsProvider.toBasic( "admin", "rotated" ), p.getAuthorization() );
+            assertFalse( p.refresh() );
+        }
+        finally
+        {
+            Files.delete( file );
+        }
+    }
+
+    public void testToken() throws Exception
+    {
+        int[] count = { 0 };
+        TokenCredentialsProvider p = new TokenCredentialsProvider( () -> "t" + ( ++count[0] ) );
+        assertEquals( "Bearer t1", p.getAuthorization() );
+        assertEquals( "Bearer t1", p.getAuthorization() );
+        assertTrue( p.refresh() );
+        assertEquals( "Bearer t2", p.getAuthorization() );
+    }
+
+    public void testNullAuthorizationSendsNoHeader() throws Exception
+    {
+        final String[] auth = { null };
+        CredentialsProvider p = new CredentialsProvider()
+        {
+            public String getAuthorization()
+            {
+                return auth[0];
+            }
+
+            public boolean refresh()
+            {
+                auth[0] = null;
+                return true;
+            }
+        };
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> new ScriptedTransport.Reply( 401, "" ) );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, p, t ) )
+        {
+            auth[0] = "Bearer expired";
+            client.attachSession( 0 );
+            fail();
+        }
+        catch ( IOException expected )
+        {
+        }
+        assertEquals( 2, t.headers.size() );
+        assertEquals( "Bearer expired", t.headers.get( 0 ).get( "Authorization" ) );
+        assertFalse( t.headers.get( 1 ).containsKey( "Authorization" ) );
+    }
+}
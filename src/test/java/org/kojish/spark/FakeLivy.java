@@ -0,0 +1,226 @@
+package org.kojish.spark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory livy server for ScriptedTransport. It keeps interactive sessions and their statements,
+ * and pages GET /sessions/{id}/statements by position in the retained statements like livy does,
+ * so the statements evicted by livy.rsc.retained-statements shift the positions away from the ids.
+ * A statement completes with the output "out:" + code when it is fetched, unless autoComplete is off;
+ * a code containing "FAIL" completes with an error.
+ */
+public class FakeLivy
+    implements ScriptedTransport.Handler
+{
+    private static final Pattern CODE = Pattern.compile( "\"code\":\"((?:\\\\.|[^\"\\\\])*)\"" );
+
+    private static class Statement
+    {
+        final int id;
+        final String code;
+        boolean completed = false;
+
+        Statement( int id, String code )
+        {
+            this.id = id;
+            this.code = code;
+        }
+    }
+
+    private static class FakeSession
+    {
+        final int id;
+        String state;
+        int nextStatement = 0;
+        final List<Statement> retained = new ArrayList<Statement>();
+
+        FakeSession( int id, String state )
+        {
+            this.id = id;
+            this.state = state;
+        }
+    }
+
+    private final Map<Integer, FakeSession> sessions = new TreeMap<Integer, FakeSession>();
+    private final List<Integer> deleted = new ArrayList<Integer>();
+    private int nextSession = 0;
+    private int retainedStatements = 100;
+    private String startState = "idle";
+    private boolean autoComplete = true;
+
+    /**
+     * Sets livy.rsc.retained-statements.
+     */
+    public synchronized void setRetainedStatements( int num )
+    {
+        retainedStatements = num;
+    }
+
+    /**
+     * Sets the state of the sessions created from now on, e.g. "starting".
+     */
+    public synchronized void setStartState( String state )
+    {
+        startState = state;
+    }
+
+    public synchronized void setAutoComplete( boolean auto )
+    {
+        autoComplete = auto;
+    }
+
+    public synchronized void setState( int session, String state )
+    {
+        sessions.get( session ).state = state;
+    }
+
+    /**
+     * Completes a statement when autoComplete is off.
+     */
+    public synchronized void complete( int session, int statement )
+    {
+        for ( Statement st : sessions.get( session ).retained )
+        {
+            if ( st.id == statement ) st.completed = true;
+        }
+    }
+
+    /**
+     * Creates a session directly, e.g. one attached by the test.
+     */
+    public synchronized int createSession()
+    {
+        int id = nextSession++;
+        sessions.put( id, new FakeSession( id, startState ) );
+        return id;
+    }
+
+    /**
+     * Posts a completed statement directly, e.g. to move the ids past the retained statements.
+     */
+    public synchronized int post( int session, String code )
+    {
+        Statement st = add( sessions.get( session ), code );
+        st.completed = true;
+        return st.id;
+    }
+
+    public synchronized List<Integer> getSessionIds()
+    {
+        return new ArrayList<Integer>( sessions.keySet() );
+    }
+
+    public synchronized List<Integer> getDeleted()
+    {
+        return new ArrayList<Integer>( deleted );
+    }
+
+    public ScriptedTransport.Reply handle( String method, String path )
+    {
+        return handle( method, path, "" );
+    }
+
+    public synchronized ScriptedTransport.Reply handle( String method, String path, String body )
+    {
+        String query = null;
+        int q = path.indexOf( '?' );
+        if ( q >= 0 )
+        {
+            query = path.substring( q + 1 );
+            path = path.substring( 0, q );
+        }
+        String[] p = path.split( "/" );
+        if ( p.length == 2 && method.equals( "POST" ) )
+        {
+            return ScriptedTransport.ok( session( sessions.get( createSession() ) ) );
+        }
+        FakeSession s = ( p.length > 2 ) ? sessions.get( Integer.parseInt( p[2] ) ) : null;
+        if ( s == null ) return notFound();
+        if ( p.length == 3 )
+        {
+            if ( method.equals( "DELETE" ) )
+            {
+                sessions.remove( s.id );
+                deleted.add( s.id );
+                return ScriptedTransport.ok( "{\"msg\":\"deleted\"}" );
+            }
+            return ScriptedTransport.ok( session( s ) );
+        }
+        if ( p.length == 4 && method.equals( "POST" ) )
+        {
+            Matcher m = CODE.matcher( body );
+            String code = m.find() ? m.group( 1 ).replace( "\\\"", "\"" ).replace( "\\\\", "\\" ) : "";
+            return ScriptedTransport.ok( "{\"id\":" + add( s, code ).id + ",\"state\":\"waiting\"}" );
+        }
+        if ( p.length == 4 )
+        {
+            int from = param( query, "from", 0 );
+            int size = param( query, "size", 100 );
+            StringBuilder json = new StringBuilder( "{\"total_statements\":" + s.retained.size() + ",\"statements\":[" );
+            for ( int i = from; i < Math.min( s.retained.size(), from + size ); i++ )
+            {
+                if ( i > from ) json.append( ',' );
+                json.append( statement( s.retained.get( i ) ) );
+            }
+            return ScriptedTransport.ok( json.append( "]}" ).toString() );
+        }
+        int id = Integer.parseInt( p[4] );
+        for ( Statement st : s.retained )
+        {
+            if ( st.id == id ) return ScriptedTransport.ok( statement( st ) );
+        }
+        return notFound();
+    }
+
+    private Statement add( FakeSession s, String code )
+    {
+        Statement st = new Statement( s.nextStatement++, code );
+        s.retained.add( st );
+        while ( s.retained.size() > retainedStatements ) s.retained.remove( 0 );
+        return st;
+    }
+
+    private String statement( Statement st )
+    {
+        if ( autoComplete ) st.completed = true;
+        if ( st.completed == false ) return "{\"id\":" + st.id + ",\"state\":\"running\",\"progress\":0.5}";
+        if ( st.code.contains( "FAIL" ) )
+        {
+            return "{\"id\":" + st.id + ",\"state\":\"available\",\"output\":{\"status\":\"error\",\"execution_count\":"
+                + st.id + ",\"ename\":\"Error\",\"evalue\":\"failed\"}}";
+        }
+        String out = ( "out:" + st.code ).replace( "\\", "\\\\" ).replace( "\"", "\\\"" );
+        return "{\"id\":" + st.id + ",\"state\":\"available\",\"output\":{\"status\":\"ok\",\"execution_count\":"
+            + st.id + ",\"data\":{\"text/plain\":\"" + out + "\"}}}";
+    }
+
+    private static String session( FakeSession s )
+    {
+        return "{\"id\":" + s.id + ",\"state\":\"" + s.state + "\",\"kind\":\"spark\"}";
+    }
+
+    private static ScriptedTransport.Reply notFound()
+    {
+        return new ScriptedTransport.Reply( 404, "{\"msg\":\"not found\"}" );
+    }
+
+    private static int param( String query, String name, int def )
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        if ( query != null )
+        {
+            for ( String kv : query.split( "&" ) )
+            {
+                int eq = kv.indexOf( '=' );
+                if ( eq > 0 ) params.put( kv.substring( 0, eq ), kv.substring( eq + 1 ) );
+            }
+        }
+        return params.containsKey( name ) ? Integer.parseInt( params.get( name ) ) : def;
+    }
+}
@@ -0,0 +1,220 @@
+package org.kojish.spark;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.InteractiveJobParameters;
+import delsh.livy.InteractiveSessionPool;
+import delsh.livy.LivyException;
+import delsh.livy.PooledSession;
+import delsh.livy.SessionKind;
+import delsh.livy.SessionPoolConf;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for InteractiveSessionPool against an in-memory livy server.
+ */
+public class InteractiveSessionPoolTest
+    extends TestCase
+{
+    private static final InteractiveJobParameters PROFILE = new InteractiveJobParameters( SessionKind.SPARK );
+
+    private final FakeLivy livy = new FakeLivy();
+
+    private static SessionPoolConf conf( int minIdle, int maxTotal, long healthCheckInterval )
+    {
+        SessionPoolConf conf = new SessionPoolConf();
+        conf.setMinIdle( minIdle );
+        conf.setMaxTotal( maxTotal );
+        conf.setHealthCheckInterval( healthCheckInterval );
+        conf.setStartPolicy( new FixedPollingPolicy( 10 ) );
+        return conf;
+    }
+
+    private InteractiveSessionPool pool( SessionPoolConf conf ) throws Exception
+    {
+        return new InteractiveSessionPool( ScriptedTransport.URI, null, new ScriptedTransport( livy ), conf );
+    }
+
+    private static void waitFor( BooleanSupplier condition ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( condition.getAsBoolean() == false )
+        {
+            if ( System.currentTimeMillis() > deadline ) fail( "Timed out." );
+            Thread.sleep( 10 );
+        }
+    }
+
+    public void testCheckedInSessionIsReused() throws Exception
+    {
+        try ( InteractiveSessionPool pool = pool( conf( 0, 2, 60000 ) ) )
+        {
+            PooledSession s = pool.checkout( PROFILE, 5000 );
+            int id = s.getSession().getId();
+            pool.checkin( s );
+            assertEquals( id, pool.checkout( PROFILE, 5000 ).getSession().getId() );
+            assertEquals( 1, pool.getCreatedCount() );
+            assertEquals( 1, pool.getHitCount() );
+            assertEquals( 1, pool.getMissCount() );
+        }
+    }
+
+    public void testCheckoutTimesOutWhenPoolIsFull() throws Exception
+    {
+        try ( InteractiveSessionPool pool = pool( conf( 0, 1, 60000 ) ) )
+        {
+            pool.checkout( PROFILE, 5000 );
+            long start = System.currentTimeMillis();
+            try
+            {
+                pool.checkout( PROFILE, 200 );
+                fail();
+            }
+            catch ( LivyException expected )
+            {
+            }
+            assertTrue( System.currentTimeMillis() - start >= 200 );
+            assertEquals( 1, pool.getTotalCount() );
+        }
+    }
+
+    public void testDeadSessionIsReplaced() throws Exception
+    {
+        try ( InteractiveSessionPool pool = pool( conf( 1, 2, 50 ) ) )
+        {
+            pool.warmUp( PROFILE );
+            waitFor( () -> pool.getIdleCount() == 1 && livy.getSessionIds().size() == 1 );
+            int dead = livy.getSessionIds().get( 0 );
+            livy.setState( dead, "dead" );
+            waitFor( () -> livy.getDeleted().contains( dead ) && pool.getIdleCount() == 1 && livy.getSessionIds().size() == 1 );
+            assertEquals( 1, pool.getReplacedCount() );
+            assertTrue( pool.checkout( PROFILE, 5000 ).getSession().getId() != dead );
+        }
+    }
+
+    public void testRecoveringSessionIsKeptAndShuttingDownOneIsReplaced() throws Exception
+    {
+        try ( InteractiveSessionPool pool = pool( conf( 1, 2, 50 ) ) )
+        {
+            pool.warmUp( PROFILE );
+            waitFor( () -> pool.getIdleCount() == 1 && livy.getSessionIds().size() == 1 );
+            int id = livy.getSessionIds().get( 0 );
+            // Livy server restarts and recovers the session.
+            livy.setState( id, "recovering" );
+            Thread.sleep( 300 );
+            livy.setState( id, "idle" );
+            assertEquals( 0, pool.getReplacedCount() );
+            assertEquals( id, pool.checkout( PROFILE, 5000 ).getSession().getId() );
+        }
+        try ( InteractiveSessionPool pool = pool( conf( 1, 2, 50 ) ) )
+        {
+            pool.warmUp( PROFILE );
+            waitFor( () -> pool.getIdleCount() == 1 && livy.getSessionIds().size() == 1 );
+            int id = livy.getSessionIds().get( 0 );
+            livy.setState( id, "shutting_down" );
+            waitFor( () -> livy.getDeleted().contains( id ) && pool.getIdleCount() == 1 );
+            assertEquals( 1, pool.getReplacedCount() );
+        }
+    }
+
+    public void testCheckingSessionIsNotHandedOut() throws Exception
+    {
+        final CountDownLatch checking = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        ScriptedTransport t = new ScriptedTransport( new ScriptedTransport.Handler()
+        {
+            public ScriptedTransport.Reply handle( String method, String path )
+            {
+                return handle( method, path, "" );
+            }
+
+            public ScriptedTransport.Reply handle( String method, String path, String body )
+            {
+                // Holds the health check of the maintainer thread.
+                if ( method.equals( "GET" ) && Thread.currentThread().getName().equals( "livy-session-pool" ) )
+                {
+                    checking.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return livy.handle( method, path, body );
+            }
+        } );
+        try ( InteractiveSessionPool pool = new InteractiveSessionPool( ScriptedTransport.URI, null, t, conf( 1, 1, 50 ) ) )
+        {
+            pool.warmUp( PROFILE );
+            assertTrue( checking.await( 5, TimeUnit.SECONDS ) );
+            try
+            {
+                pool.checkout( PROFILE, 200 );
+                fail();
+            }
+            catch ( LivyException expected )
+            {
+            }
+            release.countDown();
+            assertNotNull( pool.checkout( PROFILE, 5000 ) );
+        }
+        finally
+        {
+            release.countDown();
+        }
+    }
+
+    public void testIdleSessionIsRetired() throws Exception
+    {
+        SessionPoolConf conf = conf( 0, 1, 50 );
+        conf.setIdleTimeout( 50 );
+        try ( InteractiveSessionPool pool = pool( conf ) )
+        {
+            PooledSession s = pool.checkout( PROFILE, 5000 );
+            int id = s.getSession().getId();
+            pool.checkin( s );
+            waitFor( () -> livy.getDeleted().contains( id ) );
+            assertEquals( 1, pool.getRetiredCount() );
+            assertEquals( 0, pool.getTotalCount() );
+        }
+    }
+
+    public void testCloseDeletesSessionsAndFailsCheckout() throws Exception
+    {
+        InteractiveSessionPool pool = pool( conf( 0, 1, 60000 ) );
+        int id = pool.checkout( PROFILE, 5000 ).getSession().getId();
+        CompletableFuture<PooledSession> blocked = CompletableFuture.supplyAsync( () -> {
+            try
+            {
+                return pool.checkout( PROFILE, 60000 );
+            }
+            catch ( Exception e )
+            {
+                throw new IllegalStateException( e );
+            }
+        } );
+        Thread.sleep( 100 );
+        assertFalse( blocked.isDone() );
+        pool.close();
+        try
+        {
+            blocked.get( 5, TimeUnit.SECONDS );
+            fail();
+        }
+        catch ( ExecutionException e )
+        {
+            assertTrue( e.getCause().getCause() instanceof IOException );
+        }
+        assertTrue( livy.getDeleted().contains( id ) );
+        assertTrue( livy.getSessionIds().isEmpty() );
+    }
+}
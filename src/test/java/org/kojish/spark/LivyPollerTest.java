@@ -0,0 +1,147 @@
+package org.kojish.spark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.InteractiveJobParameters;
+import delsh.livy.InteractiveSession;
+import delsh.livy.LivyInteractiveClient;
+import delsh.livy.LivyPoller;
+import delsh.livy.Session;
+import delsh.livy.SessionEventListener;
+import delsh.livy.SessionKind;
+import delsh.livy.StatementResult;
+import delsh.livy.StatementResultListener;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the error handling of LivyPoller.
+ */
+public class LivyPollerTest
+    extends TestCase
+{
+    private static final String STARTING = "{\"id\":0,\"state\":\"starting\",\"kind\":\"spark\"}";
+
+    private static SessionEventListener failureListener( final CompletableFuture<Exception> failure )
+    {
+        return new SessionEventListener()
+        {
+            public boolean updateStatus( Session event )
+            {
+                return true;
+            }
+
+            public void onError( Exception cause )
+            {
+                failure.complete( cause );
+            }
+        };
+    }
+
+    public void testWatchersAreNotifiedAfterRetries() throws Exception
+    {
+        final AtomicInteger gets = new AtomicInteger();
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) ) return ScriptedTransport.ok( STARTING );
+            gets.incrementAndGet();
+            throw new IOException( "down" );
+        } );
+        LivyPoller poller = new LivyPoller( 1 );
+        poller.setMaxFailures( 3 );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            client.setPoller( poller );
+            CompletableFuture<Exception> failure = new CompletableFuture<Exception>();
+            client.createSession( new InteractiveJobParameters( SessionKind.SPARK ), new FixedPollingPolicy( 10 ), failureListener( failure ) );
+            assertTrue( failure.get( 10, TimeUnit.SECONDS ) instanceof IOException );
+            assertEquals( 3, gets.get() );
+            assertEquals( 0, poller.getSessionCount() );
+        }
+        finally
+        {
+            poller.close();
+        }
+    }
+
+    public void testCloseNotifiesWatchers() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> ScriptedTransport.ok( STARTING ) );
+        LivyPoller poller = new LivyPoller( 1 );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            client.setPoller( poller );
+            CompletableFuture<Exception> failure = new CompletableFuture<Exception>();
+            client.createSession( new InteractiveJobParameters( SessionKind.SPARK ), new FixedPollingPolicy( 10 ), failureListener( failure ) );
+            poller.close();
+            assertTrue( failure.get( 5, TimeUnit.SECONDS ) instanceof CancellationException );
+        }
+    }
+
+    public void testSparseStatementsAreFetchedById() throws Exception
+    {
+        final AtomicInteger ids = new AtomicInteger();
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) )
+            {
+                return ScriptedTransport.ok( "{\"id\":" + ( ids.getAndIncrement() * 1000 ) + ",\"state\":\"waiting\"}" );
+            }
+            if ( path.equals( "/sessions/0" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"idle\"}" );
+            String id = path.substring( path.lastIndexOf( '/' ) + 1 );
+            return ScriptedTransport.ok( "{\"id\":" + id + ",\"state\":\"available\","
+                + "\"output\":{\"status\":\"ok\",\"execution_count\":1,\"data\":{\"text/plain\":\"out" + id + "\"}}}" );
+        } );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            InteractiveSession s = client.attachSession( 0 );
+            CompletableFuture<StatementResult> r0 = new CompletableFuture<StatementResult>();
+            CompletableFuture<StatementResult> r1 = new CompletableFuture<StatementResult>();
+            client.submitStatement( s, "a", new FixedPollingPolicy( 50 ), (StatementResultListener) r0::complete );
+            client.submitStatement( s, "b", new FixedPollingPolicy( 50 ), (StatementResultListener) r1::complete );
+            assertEquals( "out0", r0.get( 5, TimeUnit.SECONDS ).getOutput() );
+            assertEquals( "out1000", r1.get( 5, TimeUnit.SECONDS ).getOutput() );
+            for ( String r : t.requests )
+            {
+                assertFalse( r, r.contains( "size=1001" ) );
+            }
+        }
+    }
+
+    public void testStatementsAfterEvictionAreFetchedById() throws Exception
+    {
+        FakeLivy livy = new FakeLivy();
+        int sid = livy.createSession();
+        // livy.rsc.retained-statements keeps 100, so the positions of the next statements are 97 to 99.
+        for ( int i = 0; i < 150; i++ )
+        {
+            livy.post( sid, "old" + i );
+        }
+        livy.setAutoComplete( false );
+        ScriptedTransport t = new ScriptedTransport( livy );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            InteractiveSession s = client.attachSession( sid );
+            List<CompletableFuture<StatementResult>> results = new ArrayList<CompletableFuture<StatementResult>>();
+            for ( int i = 0; i < 3; i++ )
+            {
+                CompletableFuture<StatementResult> r = new CompletableFuture<StatementResult>();
+                assertEquals( 150 + i, client.submitStatement( s, "new" + i, new FixedPollingPolicy( 20 ), (StatementResultListener) r::complete ) );
+                results.add( r );
+            }
+            for ( int i = 0; i < 3; i++ )
+            {
+                livy.complete( sid, 150 + i );
+            }
+            for ( int i = 0; i < 3; i++ )
+            {
+                assertEquals( "out:new" + i, results.get( i ).get( 5, TimeUnit.SECONDS ).getOutput() );
+            }
+            assertTrue( t.requests.contains( "GET /sessions/" + sid + "/statements/151" ) );
+        }
+    }
+}
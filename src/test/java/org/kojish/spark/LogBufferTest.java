@@ -0,0 +1,39 @@
+package org.kojish.spark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import delsh.livy.LogBuffer;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the log ring buffer.
+ */
+public class LogBufferTest
+    extends TestCase
+{
+    public void testKeepsLatestLines() throws Exception
+    {
+        List<String> forwarded = new ArrayList<String>();
+        LogBuffer b = new LogBuffer( 3, ( from, lines ) -> forwarded.addAll( lines ) );
+        b.onLines( 0, Arrays.asList( "a", "b" ) );
+        b.onLines( 2, Arrays.asList( "c", "d" ) );
+
+        assertEquals( 3, b.size() );
+        assertEquals( 1, b.getFirstIndex() );
+        assertEquals( Arrays.asList( "b", "c", "d" ), b.getLines() );
+        assertEquals( Arrays.asList( "c", "d" ), b.getLines( 2 ) );
+        assertEquals( Arrays.asList( "a", "b", "c", "d" ), forwarded );
+    }
+
+    public void testGapDropsOldLines() throws Exception
+    {
+        LogBuffer b = new LogBuffer( 10 );
+        b.onLines( 0, Arrays.asList( "a", "b" ) );
+        b.onLines( 5, Arrays.asList( "f" ) );
+
+        assertEquals( 5, b.getFirstIndex() );
+        assertEquals( Arrays.asList( "f" ), b.getLines() );
+    }
+}
@@ -0,0 +1,107 @@
+package org.kojish.spark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import delsh.livy.BatchJobParameters;
+import delsh.livy.LivyBatchClient;
+import delsh.livy.LogSink;
+import delsh.livy.LogTailer;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LogTailer against the bounded log buffer of livy server.
+ */
+public class LogTailerTest
+    extends TestCase
+{
+    private static final int CAPACITY = 5;
+
+    // Lines of the whole log. The server returns only the last CAPACITY of them.
+    private final List<String> log = new ArrayList<String>();
+    private final List<String> received = new ArrayList<String>();
+    private int gaps = 0;
+
+    private void append( int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            log.add( "line" + log.size() );
+        }
+    }
+
+    private ScriptedTransport.Reply page( String path )
+    {
+        String query = path.substring( path.indexOf( '?' ) + 1 );
+        int from = Integer.parseInt( query.replaceAll( ".*from=(\\d+).*", "$1" ) );
+        int size = Integer.parseInt( query.replaceAll( ".*size=(\\d+).*", "$1" ) );
+        List<String> buffer = log.subList( Math.max( 0, log.size() - CAPACITY ), log.size() );
+        StringBuilder json = new StringBuilder( "{\"id\":0,\"from\":" + from + ",\"total\":" + buffer.size() + ",\"log\":[" );
+        for ( int i = from; i < Math.min( buffer.size(), from + size ); i++ )
+        {
+            if ( i > from ) json.append( ',' );
+            json.append( '"' ).append( buffer.get( i ) ).append( '"' );
+        }
+        return ScriptedTransport.ok( json.append( "]}" ).toString() );
+    }
+
+    private LogTailer newTailer( LivyBatchClient client ) throws Exception
+    {
+        client.createJob( new BatchJobParameters( "app.jar", "Main" ) );
+        return client.tailLog( new LogSink()
+        {
+            public void onLines( int from, List<String> lines )
+            {
+                assertEquals( from, received.size() );
+                received.addAll( lines );
+            }
+
+            public void onGap()
+            {
+                gaps++;
+            }
+        } );
+    }
+
+    public void testWrappedBufferIsFollowed() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"running\"}" );
+            return page( path );
+        } );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t ) )
+        {
+            LogTailer tailer = newTailer( client );
+            append( 3 );
+            assertEquals( 3, tailer.poll() );
+            // The buffer fills up and drops line0 and line1.
+            append( 4 );
+            assertEquals( 4, tailer.poll() );
+            // total stays at CAPACITY from here on.
+            append( 2 );
+            assertEquals( 2, tailer.poll() );
+            assertEquals( 0, tailer.poll() );
+            assertEquals( log, received );
+            assertEquals( 0, gaps );
+        }
+    }
+
+    public void testLinesDroppedBeforePollAreReported() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"running\"}" );
+            return page( path );
+        } );
+        try ( LivyBatchClient client = new LivyBatchClient( ScriptedTransport.URI, null, t ) )
+        {
+            LogTailer tailer = newTailer( client );
+            append( 4 );
+            assertEquals( 4, tailer.poll() );
+            append( 20 );
+            assertEquals( CAPACITY, tailer.poll() );
+            assertEquals( 1, gaps );
+            assertEquals( log.subList( log.size() - CAPACITY, log.size() ), received.subList( 4, received.size() ) );
+            assertEquals( 0, tailer.poll() );
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.kojish.spark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import delsh.livy.OutputBuffer;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the statement output buffer.
+ */
+public class OutputBufferTest
+    extends TestCase
+{
+    private static String sample( int lines )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < lines; i++ )
+        {
+            sb.append( "|row " ).append( i ).append( " \u00e9\u3042|\n" );
+        }
+        return sb.toString();
+    }
+
+    private static void check( OutputBuffer b, String expected ) throws Exception
+    {
+        assertEquals( expected.length(), b.length() );
+        assertEquals( expected, b.asCharSequence().toString() );
+        assertEquals( expected.charAt( expected.length() / 2 ), b.asCharSequence().charAt( expected.length() / 2 ) );
+
+        StringBuilder sb = new StringBuilder();
+        Reader r = b.openReader();
+        char[] buf = new char[1000];
+        int n;
+        while ( ( n = r.read( buf ) ) != -1 )
+        {
+            sb.append( buf, 0, n );
+        }
+        assertEquals( expected, sb.toString() );
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        InputStream in = b.openStream();
+        byte[] bytes = new byte[777];
+        while ( ( n = in.read( bytes ) ) != -1 )
+        {
+            bos.write( bytes, 0, n );
+        }
+        assertEquals( expected, new String( bos.toByteArray(), StandardCharsets.UTF_8 ) );
+    }
+
+    public void testSmallOutputStaysInMemory() throws Exception
+    {
+        OutputBuffer b = new OutputBuffer( 1000 );
+        String s = sample( 10 );
+        b.write( s );
+        b.close();
+        assertFalse( b.isSpilled() );
+        check( b, s );
+    }
+
+    public void testLargeOutputIsSpilled() throws Exception
+    {
+        OutputBuffer b = new OutputBuffer( 1000 );
+        String s = sample( 5000 );
+        for ( int i = 0; i < s.length(); i += 300 )
+        {
+            b.write( s, i, Math.min( 300, s.length() - i ) );
+        }
+        b.close();
+        assertTrue( b.isSpilled() );
+        check( b, s );
+    }
+}
@@ -0,0 +1,56 @@
+package org.kojish.spark;
+
+import delsh.livy.ExponentialPollingPolicy;
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.JitteredPollingPolicy;
+import delsh.livy.PollingPolicy;
+import delsh.livy.ProgressPollingPolicy;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the polling policies.
+ */
+public class PollingPolicyTest
+    extends TestCase
+{
+    public void testFixed()
+    {
+        PollingPolicy p = new FixedPollingPolicy( 1000 );
+        assertEquals( 1000, p.nextDelay( 1, 0, -1 ) );
+        assertEquals( 1000, p.nextDelay( 100, 60000, 0.5 ) );
+    }
+
+    public void testExponentialIsCapped()
+    {
+        PollingPolicy p = new ExponentialPollingPolicy( 50, 1000, 2 );
+        assertEquals( 50, p.nextDelay( 1, 0, -1 ) );
+        assertEquals( 100, p.nextDelay( 2, 0, -1 ) );
+        assertEquals( 800, p.nextDelay( 5, 0, -1 ) );
+        assertEquals( 1000, p.nextDelay( 6, 0, -1 ) );
+        assertEquals( 1000, p.nextDelay( 1000, 0, -1 ) );
+    }
+
+    public void testJitterStaysInRange()
+    {
+        PollingPolicy p = new JitteredPollingPolicy( new FixedPollingPolicy( 1000 ), 0.2 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            long d = p.nextDelay( 1, 0, -1 );
+            assertTrue( d >= 800 && d <= 1200 );
+        }
+    }
+
+    public void testProgress()
+    {
+        PollingPolicy p = new ProgressPollingPolicy( 20, 10000 );
+        // Unknown progress backs off from the minimum.
+        assertEquals( 20, p.nextDelay( 1, 0, -1 ) );
+        assertEquals( 40, p.nextDelay( 2, 0, -1 ) );
+        // 10s elapsed at 50% leaves about 10s, so poll again in 5s.
+        assertEquals( 5000, p.nextDelay( 3, 10000, 0.5 ) );
+        // Almost done.
+        assertEquals( 20, p.nextDelay( 3, 100, 0.99 ) );
+        // A long job is polled at the cap.
+        assertEquals( 10000, p.nextDelay( 3, 600000, 0.1 ) );
+    }
+}
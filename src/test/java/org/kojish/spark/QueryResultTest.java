@@ -0,0 +1,89 @@
+package org.kojish.spark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.InteractiveSession;
+import delsh.livy.LivyInteractiveClient;
+import delsh.livy.QueryResult;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the paging of QueryResult against a server that caps the rows of a statement.
+ */
+public class QueryResultTest
+    extends TestCase
+{
+    private static final int ROWS = 25;
+    // Stands for livy.rsc.sql.num-rows.
+    private static final int SERVER_CAP = 7;
+    private static final Pattern RANGE = Pattern.compile( "__livy_row > (\\d+) AND __livy_row <= (\\d+)" );
+
+    private final List<String> codes = new ArrayList<String>();
+    private ScriptedTransport transport;
+
+    private static String table( String fields, StringBuilder data )
+    {
+        return "{\"id\":0,\"state\":\"available\",\"output\":{\"status\":\"ok\",\"execution_count\":1,\"data\":{\"application/json\":"
+            + "{\"schema\":{\"type\":\"struct\",\"fields\":[" + fields + "]},\"data\":[" + data + "]}}}}";
+    }
+
+    private ScriptedTransport.Reply reply( String method, String path )
+    {
+        if ( method.equals( "POST" ) )
+        {
+            codes.add( transport.bodies.get( transport.bodies.size() - 1 ) );
+            return ScriptedTransport.ok( "{\"id\":" + ( codes.size() - 1 ) + ",\"state\":\"waiting\"}" );
+        }
+        if ( path.equals( "/sessions/0" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"idle\"}" );
+        String code = codes.get( Integer.parseInt( path.substring( path.lastIndexOf( '/' ) + 1 ) ) );
+        if ( code.contains( "COUNT(*)" ) )
+        {
+            return ScriptedTransport.ok( table( "{\"name\":\"count(1)\",\"type\":\"long\"}", new StringBuilder( "[" + ROWS + "]" ) ) );
+        }
+        Matcher m = RANGE.matcher( code );
+        if ( m.find() == false )
+        {
+            return ScriptedTransport.ok( "{\"id\":0,\"state\":\"available\",\"output\":{\"status\":\"ok\",\"execution_count\":1,\"data\":{}}}" );
+        }
+        int lo = Integer.parseInt( m.group( 1 ) );
+        int hi = Math.min( Math.min( Integer.parseInt( m.group( 2 ) ), ROWS ), lo + SERVER_CAP );
+        StringBuilder data = new StringBuilder();
+        for ( int i = lo; i < hi; i++ )
+        {
+            if ( i > lo ) data.append( ',' );
+            data.append( "[" + i + "," + ( i + 1 ) + "]" );
+        }
+        return ScriptedTransport.ok( table( "{\"name\":\"n\",\"type\":\"integer\"},{\"name\":\"__livy_row\",\"type\":\"integer\"}", data ) );
+    }
+
+    public void testTruncatedPagesDoNotEndTheResult() throws Exception
+    {
+        transport = new ScriptedTransport( this::reply );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, transport ) )
+        {
+            InteractiveSession s = client.attachSession( 0 );
+            try ( QueryResult result = client.query( s, "SELECT n FROM t\nWHERE s <> \"a\"", 10, new FixedPollingPolicy( 10 ) ) )
+            {
+                // The rows are numbered by zipWithIndex, not by a window that moves them into one partition.
+                String number = codes.get( 0 );
+                assertTrue( number.endsWith( ",\"kind\":\"spark\"}" ) );
+                assertTrue( number.contains( "spark.sql(\\\"SELECT n FROM t\\\\nWHERE s <> \\\\\\\"a\\\\\\\"\\\")" ) );
+                assertTrue( number.contains( "zipWithIndex" ) );
+                assertFalse( number.contains( "OVER" ) );
+                assertTrue( codes.get( 1 ).startsWith( "{\"code\":\"CACHE TABLE " + result.getViewName() + "\"" ) );
+                assertEquals( ROWS, result.getRowCount() );
+                int expected = 0;
+                for ( QueryResult.Row row : result )
+                {
+                    assertEquals( 1, row.getColumnCount() );
+                    assertEquals( expected++, row.getInt( "n" ) );
+                }
+                assertEquals( ROWS, expected );
+            }
+        }
+    }
+}
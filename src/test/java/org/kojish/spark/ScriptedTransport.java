@@ -0,0 +1,106 @@
+package org.kojish.spark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import delsh.livy.LivyRequest;
+import delsh.livy.LivyResponse;
+import delsh.livy.LivyTransport;
+
+/**
+ * A transport that answers requests in memory, for the tests of the clients.
+ */
+public class ScriptedTransport
+    implements LivyTransport
+{
+    public static final String URI = "http://livy.test/livy";
+
+    /**
+     * Answers a request, or throws to simulate a network error.
+     */
+    public interface Handler
+    {
+        Reply handle( String method, String path ) throws IOException;
+
+        /**
+         * Answers a request with its body. Override this to read the body.
+         */
+        default Reply handle( String method, String path, String body ) throws IOException
+        {
+            return handle( method, path );
+        }
+    }
+
+    public static class Reply
+    {
+        final int status;
+        final String body;
+
+        public Reply( int status, String body )
+        {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    public final List<String> requests = Collections.synchronizedList( new ArrayList<String>() );
+    public final List<Map<String, String>> headers = Collections.synchronizedList( new ArrayList<Map<String, String>>() );
+    // Request bodies in UTF-8, "" for a request without a body.
+    public final List<String> bodies = Collections.synchronizedList( new ArrayList<String>() );
+    private volatile Handler handler;
+
+    public ScriptedTransport( Handler handler )
+    {
+        this.handler = handler;
+    }
+
+    public void setHandler( Handler handler )
+    {
+        this.handler = handler;
+    }
+
+    public static Reply ok( String body )
+    {
+        return new Reply( 200, body );
+    }
+
+    public LivyResponse execute( LivyRequest request ) throws IOException
+    {
+        String path = request.getUrl().getFile().substring( "/livy".length() );
+        requests.add( request.getMethod() + " " + path );
+        headers.add( new HashMap<String, String>( request.getHeaders() ) );
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ( request.getStreamingBody() != null ) request.getStreamingBody().writeTo( body );
+        String text = new String( body.toByteArray(), StandardCharsets.UTF_8 );
+        bodies.add( text );
+        final Reply reply = handler.handle( request.getMethod(), path, text );
+        return new LivyResponse()
+        {
+            public int getStatusCode()
+            {
+                return reply.status;
+            }
+
+            public InputStream getBody()
+            {
+                return new ByteArrayInputStream( reply.body.getBytes( StandardCharsets.UTF_8 ) );
+            }
+
+            public void close()
+            {
+            }
+        };
+    }
+
+    public void close()
+    {
+    }
+}
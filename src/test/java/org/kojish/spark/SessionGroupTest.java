@@ -0,0 +1,131 @@
+package org.kojish.spark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.InteractiveSession;
+import delsh.livy.LivyInteractiveClient;
+import delsh.livy.SessionGroup;
+import delsh.livy.StatementResult;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the routing of SessionGroup against an in-memory livy server.
+ */
+public class SessionGroupTest
+    extends TestCase
+{
+    private static final int SESSIONS = 3;
+
+    private final FakeLivy livy = new FakeLivy();
+    private final ScriptedTransport t = new ScriptedTransport( livy );
+
+    private SessionGroup group( LivyInteractiveClient client ) throws Exception
+    {
+        List<InteractiveSession> sessions = new ArrayList<InteractiveSession>();
+        for ( int i = 0; i < SESSIONS; i++ )
+        {
+            sessions.add( client.attachSession( livy.createSession() ) );
+        }
+        return new SessionGroup( client, sessions, 10, new FixedPollingPolicy( 10 ) );
+    }
+
+    private int posts( int session )
+    {
+        synchronized ( t.requests )
+        {
+            return Collections.frequency( t.requests, "POST /sessions/" + session + "/statements" );
+        }
+    }
+
+    public void testKeyIsAlwaysRoutedToTheSameSession() throws Exception
+    {
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t );
+              SessionGroup group = group( client ) )
+        {
+            Map<Integer, Integer> load = new HashMap<Integer, Integer>();
+            for ( int i = 0; i < 300; i++ )
+            {
+                int id = group.getSession( "table" + i ).getId();
+                assertEquals( id, group.getSession( "table" + i ).getId() );
+                load.merge( id, 1, Integer::sum );
+            }
+            assertEquals( SESSIONS, load.size() );
+            for ( int n : load.values() )
+            {
+                assertTrue( "Uneven spread: " + load, n > 50 );
+            }
+
+            int id = group.getSession( "cached" ).getId();
+            for ( int i = 0; i < 5; i++ )
+            {
+                assertEquals( "out:" + i, group.submit( "cached", "" + i ).get( 5, TimeUnit.SECONDS ).getOutput() );
+            }
+            assertEquals( 5, posts( id ) );
+        }
+    }
+
+    public void testUnkeyedStatementGoesToLeastLoadedSession() throws Exception
+    {
+        livy.setAutoComplete( false );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t );
+              SessionGroup group = group( client ) )
+        {
+            int busy = group.getSession( "busy" ).getId();
+            group.submit( "busy", "a" );
+            group.submit( "busy", "b" );
+            for ( int i = 0; i < 4; i++ )
+            {
+                group.submit( "c" + i );
+            }
+            // The other sessions take the unkeyed statements until they are as loaded as the busy one.
+            for ( InteractiveSession s : group.getSessions() )
+            {
+                assertEquals( 2, posts( s.getId() ) );
+            }
+            assertEquals( 6, group.getOutstandingCount() );
+
+            livy.complete( busy, 0 );
+            livy.complete( busy, 1 );
+            while ( group.getOutstandingCount() > 4 )
+            {
+                Thread.sleep( 10 );
+            }
+            group.submit( "d" );
+            assertEquals( 3, posts( busy ) );
+        }
+    }
+
+    public void testSubmitAllKeepsInputOrder() throws Exception
+    {
+        livy.setAutoComplete( false );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t );
+              SessionGroup group = group( client ) )
+        {
+            List<String> codes = Arrays.asList( "a", "b", "c", "d", "e", "f" );
+            CompletableFuture<List<StatementResult>> all = group.submitAll( codes );
+            // Completes the statements in the reverse order of submission.
+            for ( int sid = SESSIONS - 1; sid >= 0; sid-- )
+            {
+                for ( int id = posts( sid ) - 1; id >= 0; id-- )
+                {
+                    livy.complete( sid, id );
+                    Thread.sleep( 20 );
+                }
+            }
+            List<String> outputs = new ArrayList<String>();
+            for ( StatementResult r : all.get( 5, TimeUnit.SECONDS ) )
+            {
+                outputs.add( r.getOutput() );
+            }
+            assertEquals( "[out:a, out:b, out:c, out:d, out:e, out:f]", outputs.toString() );
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.kojish.spark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import delsh.livy.JsonConverter;
+import delsh.livy.SessionKind;
+import delsh.livy.StatementBody;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the streaming statement body.
+ */
+public class StatementBodyTest
+    extends TestCase
+{
+    private static final String CODE = "println(\"a\\b\")\n\tval s = \"\u00e9\u3042\ud83d\ude00\u0001\"\ud800";
+
+    private static byte[] write( StatementBody body ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo( out );
+        return out.toByteArray();
+    }
+
+    public void testString() throws Exception
+    {
+        StatementBody body = StatementBody.of( CODE, SessionKind.PYSPARK );
+        byte[] data = write( body );
+        assertEquals( data.length, body.getLength() );
+        assertTrue( body.isRepeatable() );
+
+        Map<?, ?> json = JsonConverter.toObject( Map.class, new String( data, StandardCharsets.UTF_8 ) );
+        assertEquals( CODE, json.get( "code" ) );
+        assertEquals( "pyspark", json.get( "kind" ) );
+        assertEquals( 2, json.size() );
+    }
+
+    public void testReader() throws Exception
+    {
+        StatementBody body = StatementBody.of( new StringReader( CODE ), null );
+        assertEquals( -1, body.getLength() );
+        assertFalse( body.isRepeatable() );
+        byte[] data = write( body );
+        assertEquals( new String( write( StatementBody.of( CODE, null ) ), StandardCharsets.UTF_8 ), new String( data, StandardCharsets.UTF_8 ) );
+        try {
+            write( body );
+            fail();
+        } catch( IOException e ) {
+            // expected
+        }
+    }
+
+    public void testPath() throws Exception
+    {
+        Path script = Files.createTempFile( "statement", ".scala" );
+        try {
+            Files.write( script, "val s = \"\u00e9\"\n".getBytes( StandardCharsets.UTF_8 ) );
+            StatementBody body = StatementBody.of( script, SessionKind.SPARK );
+            Map<?, ?> json = JsonConverter.toObject( Map.class, new String( write( body ), StandardCharsets.UTF_8 ) );
+            assertEquals( "val s = \"\u00e9\"\n", json.get( "code" ) );
+            assertNull( body.getCode() );
+        } finally {
+            Files.delete( script );
+        }
+    }
+}
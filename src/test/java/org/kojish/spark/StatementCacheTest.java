@@ -0,0 +1,104 @@
+package org.kojish.spark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.InteractiveSession;
+import delsh.livy.LivyInteractiveClient;
+import delsh.livy.SessionKind;
+import delsh.livy.StatementCache;
+import delsh.livy.StatementResult;
+import delsh.livy.StatementResultListener;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the statement result cache.
+ */
+public class StatementCacheTest
+    extends TestCase
+{
+    private static StatementResult ok( String out )
+    {
+        return new StatementResult( 0, StatementResult.STATE_AVAILABLE, 1, "ok", out, "" );
+    }
+
+    public void testNormalizedKey()
+    {
+        StatementCache c = new StatementCache( 10, 60000 );
+        c.put( "sales", SessionKind.SPARK, "df.count()\r\n", ok( "42" ) );
+
+        assertEquals( "42", c.get( "sales", SessionKind.SPARK, "\ndf.count()  \n" ).getOutput() );
+        assertNull( c.get( "sales", SessionKind.PYSPARK, "df.count()" ) );
+        assertNull( c.get( "other", SessionKind.SPARK, "df.count()" ) );
+        assertEquals( 1, c.getHitCount() );
+        assertEquals( 2, c.getMissCount() );
+    }
+
+    public void testLruEviction()
+    {
+        StatementCache c = new StatementCache( 2, 60000 );
+        c.put( null, SessionKind.SPARK, "a", ok( "1" ) );
+        c.put( null, SessionKind.SPARK, "b", ok( "2" ) );
+        c.get( null, SessionKind.SPARK, "a" );
+        c.put( null, SessionKind.SPARK, "c", ok( "3" ) );
+
+        assertNotNull( c.get( null, SessionKind.SPARK, "a" ) );
+        assertNull( c.get( null, SessionKind.SPARK, "b" ) );
+        assertEquals( 1, c.getEvictionCount() );
+    }
+
+    public void testTtlAndInvalidation() throws Exception
+    {
+        StatementCache c = new StatementCache( 10, 50 );
+        c.put( "s1", SessionKind.SPARK, "a", ok( "1" ) );
+        c.put( "s2", SessionKind.SPARK, "a", ok( "1" ) );
+        assertFalse( c.put( "s1", SessionKind.SPARK, "b", new StatementResult( 1, StatementResult.STATE_AVAILABLE, 1, "error", "", "" ) ) );
+
+        c.invalidateScope( "s1" );
+        assertNull( c.get( "s1", SessionKind.SPARK, "a" ) );
+        assertNotNull( c.get( "s2", SessionKind.SPARK, "a" ) );
+
+        Thread.sleep( 100 );
+        assertNull( c.get( "s2", SessionKind.SPARK, "a" ) );
+        assertEquals( 0, c.size() );
+    }
+
+    public void testResultsAreCopied()
+    {
+        StatementCache c = new StatementCache( 10, 60000 );
+        StatementResult r = ok( "42" );
+        c.put( null, SessionKind.SPARK, "a", r );
+        r.setOutput( "changed" );
+        c.get( null, SessionKind.SPARK, "a" ).setOutput( "changed" );
+
+        assertEquals( "42", c.get( null, SessionKind.SPARK, "a" ).getOutput() );
+    }
+
+    public void testStatementKindIsPartOfKey() throws Exception
+    {
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"waiting\"}" );
+            if ( path.equals( "/sessions/0" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"idle\",\"kind\":\"spark\"}" );
+            return ScriptedTransport.ok( "{\"id\":0,\"state\":\"available\","
+                + "\"output\":{\"status\":\"ok\",\"execution_count\":1,\"data\":{\"text/plain\":\"1\"}}}" );
+        } );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            client.setStatementCache( new StatementCache( 10, 60000 ) );
+            InteractiveSession s = client.attachSession( 0 );
+            for ( SessionKind kind : new SessionKind[] { SessionKind.SQL, null, SessionKind.SQL } )
+            {
+                CompletableFuture<StatementResult> r = new CompletableFuture<StatementResult>();
+                client.submitCachedStatement( s, "v1", "SELECT 1", kind, new FixedPollingPolicy( 10 ), (StatementResultListener) r::complete );
+                assertEquals( "1", r.get( 5, TimeUnit.SECONDS ).getOutput() );
+            }
+            int posts = 0;
+            for ( String r : t.requests )
+            {
+                if ( r.startsWith( "POST" ) ) posts++;
+            }
+            assertEquals( 2, posts );
+        }
+    }
+}
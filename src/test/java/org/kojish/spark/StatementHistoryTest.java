@@ -0,0 +1,73 @@
+package org.kojish.spark;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import delsh.livy.StatementHistory;
+import delsh.livy.StatementResult;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the bounded statement history.
+ */
+public class StatementHistoryTest
+    extends TestCase
+{
+    private static StatementResult result( int id, String out )
+    {
+        return new StatementResult( id, StatementResult.STATE_AVAILABLE, id, "ok", out, "code" + id );
+    }
+
+    private static String repeat( char c, int n )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < n; i++ )
+        {
+            sb.append( c );
+        }
+        return sb.toString();
+    }
+
+    public void testCapacity()
+    {
+        StatementHistory h = new StatementHistory( 3, Long.MAX_VALUE, 0, null );
+        for ( int i = 0; i < 5; i++ )
+        {
+            h.add( result( i, "out" + i ) );
+        }
+        assertEquals( 3, h.size() );
+        assertNull( h.get( 1 ) );
+        assertEquals( "out4", h.get( 4 ).getOutput() );
+        assertEquals( 2, h.getResults().get( 0 ).getId() );
+        assertEquals( 2, h.getDroppedCount() );
+    }
+
+    public void testCompressionKeepsOutput()
+    {
+        StatementHistory h = new StatementHistory( 10, Long.MAX_VALUE, 100, null );
+        String big = repeat( 'x', 100000 );
+        h.add( result( 0, big ) );
+        assertTrue( h.getBytes() < 10000 );
+        assertEquals( big, h.get( 0 ).getOutput() );
+    }
+
+    public void testSpillToDisk() throws Exception
+    {
+        File dir = Files.createTempDirectory( "livy" ).toFile();
+        StatementHistory h = new StatementHistory( 2, Long.MAX_VALUE, 10, dir );
+        h.add( result( 0, repeat( 'a', 50 ) ) );
+        h.add( result( 1, "small" ) );
+        h.add( result( 2, "other" ) );
+
+        assertEquals( 2, h.size() );
+        assertEquals( 1, h.getSpilledCount() );
+        StatementResult r = h.get( 0 );
+        assertEquals( repeat( 'a', 50 ), r.getOutput() );
+        assertEquals( "code0", r.getStatement() );
+
+        h.clear();
+        assertNull( h.get( 0 ) );
+        assertEquals( 0, dir.listFiles().length );
+        dir.delete();
+    }
+}
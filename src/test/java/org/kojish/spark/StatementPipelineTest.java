@@ -0,0 +1,126 @@
+package org.kojish.spark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import delsh.livy.FixedPollingPolicy;
+import delsh.livy.InteractiveSession;
+import delsh.livy.LivyInteractiveClient;
+import delsh.livy.LivyPoller;
+import delsh.livy.StatementPipeline;
+import delsh.livy.StatementResult;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for StatementPipeline when the statements cannot be monitored.
+ */
+public class StatementPipelineTest
+    extends TestCase
+{
+    private static void assertFailsWithIOException( CompletableFuture<StatementResult> f ) throws Exception
+    {
+        try
+        {
+            f.get( 10, TimeUnit.SECONDS );
+            fail();
+        }
+        catch ( ExecutionException e )
+        {
+            assertTrue( e.getCause() instanceof IOException );
+        }
+    }
+
+    public void testPollErrorsCompleteFuturesAndFreePermits() throws Exception
+    {
+        final AtomicInteger ids = new AtomicInteger();
+        ScriptedTransport t = new ScriptedTransport( ( method, path ) -> {
+            if ( method.equals( "POST" ) )
+            {
+                return ScriptedTransport.ok( "{\"id\":" + ids.getAndIncrement() + ",\"state\":\"waiting\"}" );
+            }
+            if ( path.equals( "/sessions/0" ) ) return ScriptedTransport.ok( "{\"id\":0,\"state\":\"idle\"}" );
+            throw new IOException( "down" );
+        } );
+        LivyPoller poller = new LivyPoller( 1 );
+        poller.setMaxFailures( 1 );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            client.setPoller( poller );
+            InteractiveSession s = client.attachSession( 0 );
+            try ( StatementPipeline pipeline = new StatementPipeline( client, s, 1, new FixedPollingPolicy( 10 ) ) )
+            {
+                CompletableFuture<StatementResult> first = pipeline.submit( "1" );
+                // Waits for the permit of the first statement.
+                CompletableFuture<StatementResult> second = pipeline.trySubmit( "2", 10000 );
+                assertNotNull( second );
+                assertFailsWithIOException( first );
+                assertFailsWithIOException( second );
+            }
+        }
+        finally
+        {
+            poller.close();
+        }
+    }
+
+    public void testFuturesCompleteInSubmitOrder() throws Exception
+    {
+        FakeLivy livy = new FakeLivy();
+        int sid = livy.createSession();
+        livy.setAutoComplete( false );
+        ScriptedTransport t = new ScriptedTransport( livy );
+        try ( LivyInteractiveClient client = new LivyInteractiveClient( ScriptedTransport.URI, null, t ) )
+        {
+            InteractiveSession s = client.attachSession( sid );
+            try ( StatementPipeline pipeline = new StatementPipeline( client, s, 3, new FixedPollingPolicy( 10 ) ) )
+            {
+                final List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+                List<CompletableFuture<StatementResult>> futures = new ArrayList<CompletableFuture<StatementResult>>();
+                for ( int i = 0; i < 3; i++ )
+                {
+                    CompletableFuture<StatementResult> f = pipeline.submit( "s" + i );
+                    f.thenAccept( r -> order.add( r.getOutput() ) );
+                    futures.add( f );
+                }
+                assertEquals( 3, pipeline.getOutstandingCount() );
+                // The pipeline is full.
+                assertNull( pipeline.trySubmit( "s3", 50 ) );
+
+                // The last statement finishes first, but its future waits for the earlier ones.
+                livy.complete( sid, 2 );
+                Thread.sleep( 200 );
+                assertFalse( futures.get( 2 ).isDone() );
+
+                CompletableFuture<CompletableFuture<StatementResult>> blocked = CompletableFuture.supplyAsync( () -> {
+                    try
+                    {
+                        return pipeline.submit( "s3" );
+                    }
+                    catch ( Exception e )
+                    {
+                        throw new IllegalStateException( e );
+                    }
+                } );
+                Thread.sleep( 100 );
+                assertFalse( blocked.isDone() );
+
+                livy.complete( sid, 1 );
+                livy.complete( sid, 0 );
+                for ( CompletableFuture<StatementResult> f : futures )
+                {
+                    f.get( 5, TimeUnit.SECONDS );
+                }
+                CompletableFuture<StatementResult> fourth = blocked.get( 5, TimeUnit.SECONDS );
+                livy.complete( sid, 3 );
+                assertEquals( "out:s3", fourth.get( 5, TimeUnit.SECONDS ).getOutput() );
+                assertEquals( "[out:s0, out:s1, out:s2]", order.toString() );
+            }
+        }
+    }
+}